@@ -0,0 +1,157 @@
+package lisp;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import javax.script.Bindings;
+
+/**
+ * Enlaces de javax.script sobre un contexto LISP. Las claves son nombres de
+ * símbolo y las escrituras van directamente al contexto, sin copias.
+ * Los valores Java se convierten al guardarlos; al leerlos se devuelven
+ * las expresiones LISP tal cual, salvo las cadenas, que vuelven como String.
+ */
+public class EnlacesLisp extends AbstractMap<String, Object> implements Bindings {
+    private final contexto ctx;
+
+    /**
+     * Crea enlaces sobre el contexto dado.
+     */
+    public EnlacesLisp(contexto ctx) {
+        this.ctx = ctx;
+    }
+
+    /**
+     * Obtiene el contexto sobre el que están estos enlaces.
+     */
+    public contexto contexto() {
+        return ctx;
+    }
+
+    @Override
+    public Object put(String nombre, Object valor) {
+        simbolo s = simbolo.internamente(verificarNombre(nombre));
+        ExpresionLisp anterior = ctx.enlaces().get(s);
+        ctx.establecer(s, aLisp(valor));
+        return aJava(anterior);
+    }
+
+    @Override
+    public Object get(Object nombre) {
+        // Consultar no crea símbolos: un nombre sin símbolo no puede estar enlazado
+        simbolo s = simbolo.buscar(verificarNombre(nombre));
+        return s == null ? null : aJava(ctx.enlaces().get(s));
+    }
+
+    @Override
+    public boolean containsKey(Object nombre) {
+        return get(nombre) != null;
+    }
+
+    @Override
+    public Object remove(Object nombre) {
+        simbolo s = simbolo.buscar(verificarNombre(nombre));
+        return s == null ? null : aJava(ctx.eliminar(s));
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Entry<String, Object>> iterator() {
+                Iterator<Entry<simbolo, ExpresionLisp>> enlaces = ctx.enlaces().entrySet().iterator();
+                return new Iterator<>() {
+                    private simbolo ultimo;
+
+                    @Override
+                    public boolean hasNext() {
+                        return enlaces.hasNext();
+                    }
+
+                    @Override
+                    public Entry<String, Object> next() {
+                        Entry<simbolo, ExpresionLisp> enlace = enlaces.next();
+                        ultimo = enlace.getKey();
+                        return new SimpleImmutableEntry<>(ultimo.obtenerNombre(), aJava(enlace.getValue()));
+                    }
+
+                    @Override
+                    public void remove() {
+                        if (ultimo == null) {
+                            throw new IllegalStateException();
+                        }
+                        ctx.eliminar(ultimo);
+                        ultimo = null;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return ctx.enlaces().size();
+            }
+        };
+    }
+
+    /**
+     * Convierte un valor Java en una expresión LISP: los enteros en números,
+     * los booleanos en VERDADERO o NULO, las cadenas en cadenas LISP (que
+     * conservan mayúsculas y minúsculas), los long[] en vectores y las
+     * listas y arreglos en listas.
+     *
+     * @throws IllegalArgumentException si el valor no tiene equivalente LISP
+     */
+    public static ExpresionLisp aLisp(Object valor) {
+        if (valor instanceof ExpresionLisp) {
+            return (ExpresionLisp) valor;
+        } else if (valor == null) {
+            return simbolo.NULO;
+        } else if (valor instanceof Long || valor instanceof Integer
+                   || valor instanceof Short || valor instanceof Byte) {
+            return numero.obtenerValor(((Number) valor).longValue());
+        } else if (valor instanceof Boolean) {
+            return (Boolean) valor ? simbolo.VERDADERO : simbolo.NULO;
+        } else if (valor instanceof String) {
+            return new cadena((String) valor);
+        } else if (valor instanceof long[]) {
+            return new vector(((long[]) valor).clone());
+        } else if (valor instanceof List) {
+            List<?> lista = (List<?>) valor;
+            ExpresionLisp[] elementos = new ExpresionLisp[lista.size()];
+            for (int i = 0; i < elementos.length; i++) {
+                elementos[i] = aLisp(lista.get(i));
+            }
+            return listaCompacta.crear(elementos);
+        } else if (valor instanceof Object[]) {
+            return aLisp(Arrays.asList((Object[]) valor));
+        }
+        throw new IllegalArgumentException("No hay equivalente LISP para " + valor.getClass().getName());
+    }
+
+    /**
+     * Convierte un valor leído del contexto para devolverlo a Java: las
+     * cadenas LISP vuelven como String y lo demás se devuelve tal cual.
+     */
+    public static Object aJava(ExpresionLisp valor) {
+        if (valor instanceof cadena) {
+            return ((cadena) valor).obtenerTexto();
+        }
+        return valor;
+    }
+
+    private static String verificarNombre(Object nombre) {
+        if (nombre == null) {
+            throw new NullPointerException("El nombre no puede ser null");
+        }
+        if (!(nombre instanceof String)) {
+            throw new ClassCastException("El nombre debe ser una cadena");
+        }
+        if (((String) nombre).isEmpty()) {
+            throw new IllegalArgumentException("El nombre no puede estar vacío");
+        }
+        return (String) nombre;
+    }
+}
@@ -0,0 +1,12 @@
+package lisp;
+
+/**
+ * Excepción lanzada cuando una evaluación se cancela desde otro hilo.
+ */
+public class ExcepcionCancelada extends ExcepcionLisp {
+    private static final long serialVersionUID = 1L;
+
+    public ExcepcionCancelada() {
+        super("Evaluación cancelada");
+    }
+}
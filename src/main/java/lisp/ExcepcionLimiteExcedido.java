@@ -0,0 +1,13 @@
+package lisp;
+
+/**
+ * Excepción lanzada cuando una evaluación agota uno de sus límites
+ * (pasos, tiempo, celdas o profundidad de recursión).
+ */
+public class ExcepcionLimiteExcedido extends ExcepcionLisp {
+    private static final long serialVersionUID = 1L;
+
+    public ExcepcionLimiteExcedido(String mensaje) {
+        super(mensaje);
+    }
+}
@@ -4,6 +4,8 @@ package lisp;
  * Clase base para excepciones en el intérprete LISP.
  */
 public class ExcepcionLisp extends Exception {
+    private static final long serialVersionUID = 1L;
+
     public ExcepcionLisp(String mensaje) {
         super(mensaje);
     }
@@ -46,6 +46,42 @@ public abstract class ExpresionLisp {
      */
     public abstract void imprimir(PrintStream salida);
     
+    /**
+     * Imprime esta expresión S como una lista, recorriéndola con primero() y resto().
+     * Si la lista no termina en NULO, se imprime como un par punteado.
+     */
+    protected void imprimirComoLista(PrintStream salida) {
+        salida.print("(");
+        
+        ExpresionLisp restoLista;
+        try {
+            // Imprime el primer elemento
+            primero().imprimir(salida);
+            restoLista = resto();
+        } catch (ExcepcionLisp e) {
+            restoLista = simbolo.NULO;
+        }
+        
+        // Imprime el resto de la lista
+        while (!(restoLista.esAtomo()) && restoLista != simbolo.NULO) {
+            salida.print(" ");
+            try {
+                restoLista.primero().imprimir(salida);
+                restoLista = restoLista.resto();
+            } catch (ExcepcionLisp e) {
+                break;
+            }
+        }
+        
+        // Si el último resto no es NULO, imprímelo como un par punteado
+        if (restoLista != simbolo.NULO) {
+            salida.print(" . ");
+            restoLista.imprimir(salida);
+        }
+        
+        salida.print(")");
+    }
+    
     /**
      * Devuelve una representación de cadena de esta expresión S.
      */
@@ -0,0 +1,94 @@
+package lisp;
+
+import java.util.List;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineFactory;
+
+/**
+ * Fábrica del motor javax.script para LISP. Se registra como servicio, así que
+ * new ScriptEngineManager().getEngineByName("lisp") devuelve un MotorLisp.
+ */
+public class FabricaMotorLisp implements ScriptEngineFactory {
+    private static final String NOMBRE = "LISP";
+    private static final String VERSION = "1.0";
+
+    @Override
+    public String getEngineName() {
+        return NOMBRE;
+    }
+
+    @Override
+    public String getEngineVersion() {
+        return VERSION;
+    }
+
+    @Override
+    public List<String> getExtensions() {
+        return List.of("lisp");
+    }
+
+    @Override
+    public List<String> getMimeTypes() {
+        return List.of("text/x-lisp");
+    }
+
+    @Override
+    public List<String> getNames() {
+        return List.of("lisp", "LISP");
+    }
+
+    @Override
+    public String getLanguageName() {
+        return NOMBRE;
+    }
+
+    @Override
+    public String getLanguageVersion() {
+        return VERSION;
+    }
+
+    @Override
+    public Object getParameter(String clave) {
+        switch (clave) {
+            case ScriptEngine.ENGINE:
+            case ScriptEngine.LANGUAGE:
+                return NOMBRE;
+            case ScriptEngine.ENGINE_VERSION:
+            case ScriptEngine.LANGUAGE_VERSION:
+                return VERSION;
+            case ScriptEngine.NAME:
+                return "lisp";
+            case "THREADING":
+                // Los contextos son seguros para hilos
+                return "MULTITHREADED";
+            default:
+                return null;
+        }
+    }
+
+    @Override
+    public String getMethodCallSyntax(String objeto, String metodo, String... args) {
+        StringBuilder sb = new StringBuilder("(").append(metodo).append(" ").append(objeto);
+        for (String arg : args) {
+            sb.append(" ").append(arg);
+        }
+        return sb.append(")").toString();
+    }
+
+    @Override
+    public String getOutputStatement(String mostrar) {
+        // Como cadena, el texto se imprime tal cual, sin pasar a mayúsculas
+        // ni volver a separarse en símbolos
+        return "(IMPRIMIR \"" + mostrar.replace("\\", "\\\\").replace("\"", "\\\"") + "\")";
+    }
+
+    @Override
+    public String getProgram(String... sentencias) {
+        return String.join("\n", sentencias);
+    }
+
+    @Override
+    public ScriptEngine getScriptEngine() {
+        return new MotorLisp(this);
+    }
+}
@@ -1,30 +1,104 @@
 package lisp;
 
+import java.io.BufferedOutputStream;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.PrintStream;
+import java.io.Reader;
 import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * Clase principal para el intérprete LISP.
  */
 public class Interprete {
+    // Listas más largas que esto se procesan en paralelo si la función es pura
+    private static final int UMBRAL_PARALELO = 1024;
+    // Tamaño de los bloques en que se divide el trabajo paralelo
+    private static final int TAMANO_BLOQUE = 256;
+
     private final contexto contextoGlobal;
-    private final lisp.analizador analizador;
     private final PrintStream salida;
+    private volatile boolean pilaExplicita;
+    private volatile boolean archivosPermitidos = true;
 
     /**
      * Crea un nuevo intérprete LISP.
      */
     public Interprete() {
-        this.contextoGlobal = crearContextoGlobal();
-        this.analizador = new analizador(new InputStreamReader(System.in));
-        this.salida = System.out;
+        this(crearContextoGlobal(), System.out);
+    }
+
+    /**
+     * Crea un intérprete que evalúa sobre el contexto dado e imprime en la salida dada.
+     * El contexto debe tener las definiciones estándar (ver crearContextoGlobal).
+     */
+    public Interprete(contexto contextoGlobal, PrintStream salida) {
+        this.contextoGlobal = contextoGlobal;
+        this.salida = salida;
+    }
+
+    /**
+     * Elige el evaluador para las expresiones de nivel superior y los cuerpos de función.
+     * Con la pila explícita, la profundidad de recursión solo está limitada por la memoria.
+     */
+    public void usarPilaExplicita(boolean activar) {
+        this.pilaExplicita = activar;
     }
 
     /**
-     * Evalúa una expresión LISP.
+     * Permite o prohíbe las funciones que leen o escriben archivos (CARGAR,
+     * GUARDAR_IMAGEN y LEER_FORMAS). Se prohíben para el código que llega
+     * de clientes en los que no se confía, como las sesiones del servidor.
+     */
+    public void permitirArchivos(boolean permitir) {
+        this.archivosPermitidos = permitir;
+    }
+
+    /**
+     * Evalúa una expresión LISP con el evaluador elegido.
+     *
+     * @param expr La expresión a evaluar
+     * @param ctx El contexto en el que evaluar la expresión
+     * @return El resultado de evaluar la expresión
+     * @throws ExcepcionLisp si hay un error durante la evaluación
+     */
+    public ExpresionLisp ejecutar(ExpresionLisp expr, contexto ctx) throws ExcepcionLisp {
+        if (pilaExplicita) {
+            return new evaluadorPila(this).evaluar(expr, ctx);
+        }
+        return evaluar(expr, ctx);
+    }
+
+    /**
+     * Evalúa una expresión LISP con el evaluador elegido, dentro de los límites dados.
+     * Para abortar la evaluación desde otro hilo, se llama a limites.cancelar().
+     *
+     * @throws ExcepcionLimiteExcedido si la evaluación agota algún límite
+     * @throws ExcepcionCancelada si la evaluación se cancela
+     */
+    public ExpresionLisp ejecutar(ExpresionLisp expr, contexto ctx, presupuesto limites) throws ExcepcionLisp {
+        try {
+            return limites.ejecutar(() -> ejecutar(expr, ctx));
+        } catch (StackOverflowError e) {
+            // Una recursión desbocada se trata como un límite más
+            throw new ExcepcionLimiteExcedido("Se agotó la pila de Java");
+        }
+    }
+
+    /**
+     * Evalúa una expresión LISP recursivamente sobre la pila de Java.
      *
      * @param expr La expresión a evaluar
      * @param ctx El contexto en el que evaluar la expresión
@@ -32,6 +106,14 @@ public class Interprete {
      * @throws ExcepcionLisp si hay un error durante la evaluación
      */
     public ExpresionLisp evaluar(ExpresionLisp expr, contexto ctx) throws ExcepcionLisp {
+        return evaluar(expr, ctx, expr.esAtomo() ? null : presupuesto.actual());
+    }
+
+    /**
+     * Evalúa una expresión con el presupuesto del hilo ya obtenido, que pasa
+     * a cada subexpresión para no buscarlo de nuevo en cada paso.
+     */
+    private ExpresionLisp evaluar(ExpresionLisp expr, contexto ctx, presupuesto limites) throws ExcepcionLisp {
         // Evalúa átomos
         if (expr.esAtomo()) {
             if (expr.esSimbolo()) {
@@ -46,6 +128,9 @@ public class Interprete {
         }
 
         // Evalúa listas
+        if (limites != null) {
+            limites.cobrarPaso();
+        }
         ExpresionLisp primero = expr.primero();
         ExpresionLisp resto = expr.resto();
 
@@ -59,29 +144,23 @@ public class Interprete {
             } else if (op == simbolo.ASIGNAR) {
                 // (ASIGNAR var expr)
                 simbolo var = (simbolo) resto.primero();
-                ExpresionLisp valor = evaluar(resto.resto().primero(), ctx);
+                ExpresionLisp valor = evaluar(resto.resto().primero(), ctx, limites);
                 ctx.establecer(var, valor);
                 return valor;
             } else if (op == simbolo.DEFINIR_FUNCION) {
                 // (DEFINIR_FUNCION nombre params cuerpo)
-                simbolo nombre = (simbolo) resto.primero();
-                ExpresionLisp params = resto.resto().primero();
-                ExpresionLisp cuerpo = resto.resto().resto().primero();
-
-                Funcion func = new Funcion(params, cuerpo, ctx);
-                ctx.establecer(nombre, func);
-                return nombre;
+                return definirFuncion(resto, ctx);
             } else if (op == simbolo.CONDICIONAL) {
                 // (CONDICIONAL (cond1 expr1) (cond2 expr2) ...)
                 ExpresionLisp clausulas = resto;
                 while (clausulas != simbolo.NULO) {
                     ExpresionLisp clausula = clausulas.primero();
                     ExpresionLisp condicion = clausula.primero();
-                    ExpresionLisp resultado = evaluar(condicion, ctx);
+                    ExpresionLisp resultado = evaluar(condicion, ctx, limites);
 
                     if (resultado != simbolo.NULO) {
                         // La condición es verdadera, evalúa la expresión
-                        return evaluar(clausula.resto().primero(), ctx);
+                        return evaluar(clausula.resto().primero(), ctx, limites);
                     }
 
                     clausulas = clausulas.resto();
@@ -89,27 +168,122 @@ public class Interprete {
                 return simbolo.NULO;
             } else if (op == simbolo.IMPRIMIR) {
                 // (IMPRIMIR expr)
-                ExpresionLisp valor = evaluar(resto.primero(), ctx);
-                valor.imprimir(salida);
-                salida.println();
-                return valor;
+                return imprimirValor(evaluar(resto.primero(), ctx, limites));
+            } else if (op == simbolo.PARALELO) {
+                // (PARALELO expr1 expr2 ...) => (valor1 valor2 ...)
+                return evaluarEnParalelo(resto, ctx);
+            } else if (op == simbolo.FUTURO) {
+                // (FUTURO expr)
+                return futuro.enPiscina(() -> ejecutar(resto.primero(), ctx));
+            } else if (op == simbolo.FUTURO_BLOQUEANTE) {
+                // (FUTURO_BLOQUEANTE expr)
+                return futuro.enHiloVirtual(() -> ejecutar(resto.primero(), ctx));
+            } else if (op == simbolo.REPETIR || op == simbolo.MIENTRAS) {
+                // (REPETIR (var desde hasta [paso]) (acc inicial actualizar))
+                // (MIENTRAS condicion (var inicial siguiente) ...)
+                bucle b = bucle.crear(op, resto, ctx);
+                ExpresionLisp siguiente;
+                while ((siguiente = b.siguiente()) != null) {
+                    b.recibir(evaluar(siguiente, b.entorno(), limites));
+                }
+                return b.resultado();
             }
         }
 
         // Aplicación de función
-        ExpresionLisp funcion = evaluar(primero, ctx);
+        ExpresionLisp funcion = evaluar(primero, ctx, limites);
         List<ExpresionLisp> args = new ArrayList<>();
 
         // Evalúa argumentos
         ExpresionLisp listaArgs = resto;
         while (listaArgs != simbolo.NULO) {
-            args.add(evaluar(listaArgs.primero(), ctx));
+            args.add(evaluar(listaArgs.primero(), ctx, limites));
             listaArgs = listaArgs.resto();
         }
 
+        if (limites == null) {
+            return aplicar(funcion, args);
+        }
+        // La lista de argumentos también ocupa celdas
+        limites.cobrarCeldas(args.size());
+        if (funcion instanceof Funcion func && !pilaExplicita) {
+            // Sin pasar por aplicar(), que buscaría de nuevo el presupuesto
+            limites.entrar();
+            try {
+                return evaluar(func.cuerpo(), func.enlazar(args), limites);
+            } finally {
+                limites.salir();
+            }
+        }
         return aplicar(funcion, args);
     }
 
+    /**
+     * Crea una función y la enlaza a su nombre en el contexto dado.
+     * Una definición sin plan de captura es de nivel superior: su cuerpo pasa
+     * por la conversión de cierres, que agrega un plan a cada función anidada.
+     * Una definición con plan cierra solo sobre lo que el plan captura. El
+     * lector no produce planes, así que un cuarto elemento escrito a mano se
+     * ignora, como antes de la conversión.
+     *
+     * @param forma El resto de la forma (nombre params cuerpo [plan])
+     */
+    simbolo definirFuncion(ExpresionLisp forma, contexto ctx) throws ExcepcionLisp {
+        simbolo nombre = (simbolo) forma.primero();
+        ExpresionLisp params = forma.resto().primero();
+        ExpresionLisp cuerpo = forma.resto().resto().primero();
+        ExpresionLisp resto = forma.resto().resto().resto();
+
+        Funcion func;
+        if (resto == simbolo.NULO || !(resto.primero() instanceof planCierre plan)) {
+            func = new Funcion(params, conversionCierres.convertir(params, cuerpo), ctx);
+        } else {
+            contexto cierre = plan.capturar(ctx);
+            func = new Funcion(params, cuerpo, cierre);
+            plan.enlazarFuncion(cierre, nombre, func);
+        }
+        ctx.establecer(nombre, func);
+        return nombre;
+    }
+
+    /**
+     * Imprime un valor en su propia línea y lo devuelve.
+     */
+    ExpresionLisp imprimirValor(ExpresionLisp valor) {
+        synchronized (salida) {
+            valor.imprimir(salida);
+            salida.println();
+        }
+        return valor;
+    }
+
+    /**
+     * Evalúa cada expresión de la lista en la piscina con robo de trabajo.
+     * La última expresión se evalúa en el hilo actual mientras las demás
+     * se ejecutan, y los resultados se devuelven en el orden original.
+     */
+    ExpresionLisp evaluarEnParalelo(ExpresionLisp expresiones, contexto ctx) throws ExcepcionLisp {
+        if (expresiones == simbolo.NULO) {
+            return simbolo.NULO;
+        }
+
+        List<futuro> tareas = new ArrayList<>();
+        ExpresionLisp actual = expresiones;
+        while (actual.resto() != simbolo.NULO) {
+            ExpresionLisp subexpresion = actual.primero();
+            tareas.add(futuro.enPiscina(() -> ejecutar(subexpresion, ctx)));
+            actual = actual.resto();
+        }
+        ExpresionLisp ultimo = ejecutar(actual.primero(), ctx);
+
+        ExpresionLisp[] resultados = new ExpresionLisp[tareas.size() + 1];
+        for (int i = 0; i < tareas.size(); i++) {
+            resultados[i] = tareas.get(i).esperar();
+        }
+        resultados[tareas.size()] = ultimo;
+        return listaCompacta.crear(resultados);
+    }
+
     /**
      * Aplica una función a argumentos.
      *
@@ -118,11 +292,20 @@ public class Interprete {
      * @return El resultado de aplicar la función
      * @throws ExcepcionLisp si hay un error durante la aplicación
      */
-    private ExpresionLisp aplicar(ExpresionLisp funcion, List<ExpresionLisp> args) throws ExcepcionLisp {
+    ExpresionLisp aplicar(ExpresionLisp funcion, List<ExpresionLisp> args) throws ExcepcionLisp {
         if (funcion instanceof Funcion) {
             // Función definida por el usuario
             Funcion func = (Funcion) funcion;
-            return func.aplicar(args, this);
+            presupuesto limites = presupuesto.actual();
+            if (limites == null) {
+                return func.aplicar(args, this);
+            }
+            limites.entrar();
+            try {
+                return func.aplicar(args, this);
+            } finally {
+                limites.salir();
+            }
         } else if (funcion.esSimbolo()) {
             // Función incorporada
             simbolo op = (simbolo) funcion;
@@ -135,23 +318,197 @@ public class Interprete {
                 return args.get(0).resto();
             } else if (op == simbolo.CONSTRUIR) {
                 verificarCantidadArgumentos(args, 2);
+                cobrarCeldas(1);
                 return new par(args.get(0), args.get(1));
             } else if (op == simbolo.LISTA) {
                 // Convierte lista de args a una lista LISP adecuada
-                ExpresionLisp resultado = simbolo.NULO;
-                for (int i = args.size() - 1; i >= 0; i--) {
-                    resultado = new par(args.get(i), resultado);
-                }
-                return resultado;
+                cobrarCeldas(args.size());
+                return listaCompacta.desdeLista(args);
+            } else if (op == simbolo.LONGITUD) {
+                verificarCantidadArgumentos(args, 1);
+                return numero.obtenerValor(longitud(args.get(0)));
+            } else if (op == simbolo.ENESIMO) {
+                // (ENESIMO lista indice), empezando en 0
+                verificarCantidadArgumentos(args, 2);
+                return enesimo(args.get(0), comoNumero(args.get(1), "ENESIMO"));
             } else if (op == simbolo.ES_IGUAL_REF) {
                 verificarCantidadArgumentos(args, 2);
-                return args.get(0) == args.get(1) ? simbolo.VERDADERO : simbolo.NULO;
+                return mismoObjeto(args.get(0), args.get(1)) ? simbolo.VERDADERO : simbolo.NULO;
             } else if (op == simbolo.ES_IGUAL) {
                 verificarCantidadArgumentos(args, 2);
                 return esIgual(args.get(0), args.get(1)) ? simbolo.VERDADERO : simbolo.NULO;
             } else if (op == simbolo.ES_ATOMO) {
                 verificarCantidadArgumentos(args, 1);
                 return args.get(0).esAtomo() ? simbolo.VERDADERO : simbolo.NULO;
+            } else if (op == simbolo.ESPERAR) {
+                verificarCantidadArgumentos(args, 1);
+                if (!(args.get(0) instanceof futuro)) {
+                    throw new ExcepcionLisp("ESPERAR requiere un futuro");
+                }
+                return ((futuro) args.get(0)).esperar();
+            } else if (op == simbolo.MAPEAR) {
+                // (MAPEAR f lista)
+                verificarCantidadArgumentos(args, 2);
+                ExpresionLisp f = args.get(0);
+                if (args.get(1) instanceof secuencia) {
+                    return secuencia.transformar(args.get(1), e -> aplicar(f, List.of(e)));
+                }
+                ExpresionLisp[] resultados = aplicarACada(f, aArreglo(args.get(1), "MAPEAR"));
+                cobrarCeldas(resultados.length);
+                return listaCompacta.crear(resultados);
+            } else if (op == simbolo.FILTRAR) {
+                // (FILTRAR predicado lista)
+                verificarCantidadArgumentos(args, 2);
+                if (args.get(1) instanceof secuencia) {
+                    ExpresionLisp predicado = args.get(0);
+                    return secuencia.transformar(args.get(1),
+                        e -> aplicar(predicado, List.of(e)) != simbolo.NULO ? e : null);
+                }
+                ExpresionLisp[] elementos = aArreglo(args.get(1), "FILTRAR");
+                ExpresionLisp[] condiciones = aplicarACada(args.get(0), elementos);
+                List<ExpresionLisp> resultado = new ArrayList<>();
+                for (int i = 0; i < elementos.length; i++) {
+                    if (condiciones[i] != simbolo.NULO) {
+                        resultado.add(elementos[i]);
+                    }
+                }
+                cobrarCeldas(resultado.size());
+                return listaCompacta.desdeLista(resultado);
+            } else if (op == simbolo.REDUCIR) {
+                // (REDUCIR f inicial lista)
+                verificarCantidadArgumentos(args, 3);
+                ExpresionLisp f = args.get(0);
+                ExpresionLisp acumulado = args.get(1);
+                // Suelta la cabeza de la lista para que una secuencia perezosa
+                // pueda recolectarse a medida que se recorre
+                ExpresionLisp actual = args.set(2, simbolo.NULO);
+                presupuesto limites = presupuesto.actual();
+                while (!actual.esAtomo()) {
+                    // Las funciones incorporadas no cobran pasos por sí mismas
+                    if (limites != null) {
+                        limites.cobrarPaso();
+                    }
+                    acumulado = aplicar(f, List.of(acumulado, actual.primero()));
+                    actual = actual.resto();
+                }
+                if (actual != simbolo.NULO) {
+                    throw new ExcepcionLisp("REDUCIR requiere una lista");
+                }
+                return acumulado;
+            } else if (op == simbolo.RANGO) {
+                // (RANGO desde hasta [paso])
+                if (args.size() < 2 || args.size() > 3) {
+                    throw new ExcepcionLisp("RANGO requiere 2 o 3 argumentos");
+                }
+                for (ExpresionLisp arg : args) {
+                    if (!arg.esNumero()) {
+                        throw new ExcepcionLisp("RANGO requiere argumentos numéricos");
+                    }
+                }
+                long paso = args.size() == 3 ? ((numero) args.get(2)).obtenerValor() : 1;
+                return secuencia.rango(((numero) args.get(0)).obtenerValor(),
+                                       ((numero) args.get(1)).obtenerValor(), paso);
+            } else if (op == simbolo.LEER_FORMAS) {
+                // (LEER_FORMAS archivo)
+                verificarCantidadArgumentos(args, 1);
+                Path ruta = resolverRuta(args.get(0));
+                try {
+                    return secuencia.formas(Files.newBufferedReader(ruta, StandardCharsets.UTF_8));
+                } catch (IOException e) {
+                    throw new ExcepcionLisp("No se puede leer " + ruta + ": " + e.getMessage());
+                }
+            } else if (op == simbolo.VECTOR) {
+                // (VECTOR n1 n2 ...)
+                long[] datos = new long[args.size()];
+                for (int i = 0; i < datos.length; i++) {
+                    datos[i] = comoNumero(args.get(i), "VECTOR");
+                }
+                return new vector(datos);
+            } else if (op == simbolo.VECTOR_RANGO) {
+                // (VECTOR_RANGO desde hasta)
+                verificarCantidadArgumentos(args, 2);
+                long desde = comoNumero(args.get(0), "VECTOR_RANGO");
+                long hasta = comoNumero(args.get(1), "VECTOR_RANGO");
+                if (hasta > desde) {
+                    // Si la resta se desborda, vector.rango lo rechaza
+                    cobrarPasos(Math.max(0, hasta - desde));
+                }
+                return vector.rango(desde, hasta);
+            } else if (op == simbolo.LISTA_A_VECTOR) {
+                verificarCantidadArgumentos(args, 1);
+                return vector.desdeLista(args.get(0));
+            } else if (op == simbolo.VECTOR_A_LISTA) {
+                verificarCantidadArgumentos(args, 1);
+                vector v = comoVector(args.get(0), "VECTOR_A_LISTA");
+                cobrarPasos(v.longitud());
+                cobrarCeldas(v.longitud());
+                return v.aLista();
+            } else if (op == simbolo.VECTOR_REF) {
+                // (VECTOR_REF v indice)
+                verificarCantidadArgumentos(args, 2);
+                vector v = comoVector(args.get(0), "VECTOR_REF");
+                return numero.obtenerValor(v.obtener(comoNumero(args.get(1), "VECTOR_REF")));
+            } else if (op == simbolo.VECTOR_LONGITUD) {
+                verificarCantidadArgumentos(args, 1);
+                return numero.obtenerValor(comoVector(args.get(0), "VECTOR_LONGITUD").longitud());
+            } else if (op == simbolo.VECTOR_SUMAR) {
+                return operarVectores(vector.Operacion.SUMA, args, "VECTOR_SUMAR");
+            } else if (op == simbolo.VECTOR_RESTAR) {
+                return operarVectores(vector.Operacion.RESTA, args, "VECTOR_RESTAR");
+            } else if (op == simbolo.VECTOR_MULTIPLICAR) {
+                return operarVectores(vector.Operacion.PRODUCTO, args, "VECTOR_MULTIPLICAR");
+            } else if (op == simbolo.VECTOR_SUMA) {
+                verificarCantidadArgumentos(args, 1);
+                vector v = comoVector(args.get(0), "VECTOR_SUMA");
+                cobrarPasos(v.longitud());
+                return numero.obtenerValor(v.suma());
+            } else if (op == simbolo.VECTOR_MINIMO) {
+                verificarCantidadArgumentos(args, 1);
+                vector v = comoVector(args.get(0), "VECTOR_MINIMO");
+                cobrarPasos(v.longitud());
+                return numero.obtenerValor(v.minimo());
+            } else if (op == simbolo.VECTOR_MAXIMO) {
+                verificarCantidadArgumentos(args, 1);
+                vector v = comoVector(args.get(0), "VECTOR_MAXIMO");
+                cobrarPasos(v.longitud());
+                return numero.obtenerValor(v.maximo());
+            } else if (op == simbolo.VECTOR_PRODUCTO) {
+                // (VECTOR_PRODUCTO a b) => producto punto
+                verificarCantidadArgumentos(args, 2);
+                vector a = comoVector(args.get(0), "VECTOR_PRODUCTO");
+                cobrarPasos(a.longitud());
+                return numero.obtenerValor(a.productoPunto(comoVector(args.get(1), "VECTOR_PRODUCTO")));
+            } else if (op == simbolo.CREAR_ARENA) {
+                verificarCantidadArgumentos(args, 0);
+                return new arenaCeldas();
+            } else if (op == simbolo.EN_ARENA) {
+                // (EN_ARENA arena expr) copia expr a la arena
+                verificarCantidadArgumentos(args, 2);
+                return comoArena(args.get(0), "EN_ARENA").copiar(args.get(1));
+            } else if (op == simbolo.LIBERAR_ARENA) {
+                verificarCantidadArgumentos(args, 1);
+                comoArena(args.get(0), "LIBERAR_ARENA").liberar();
+                return simbolo.VERDADERO;
+            } else if (op == simbolo.CARGAR) {
+                // (CARGAR archivo)
+                verificarCantidadArgumentos(args, 1);
+                return cargar(resolverRuta(args.get(0)));
+            } else if (op == simbolo.GUARDAR_IMAGEN) {
+                // (GUARDAR_IMAGEN archivo)
+                verificarCantidadArgumentos(args, 1);
+                guardarImagen(resolverRuta(args.get(0)));
+                return simbolo.VERDADERO;
+            } else if (op == simbolo.PURA) {
+                // (PURA f) marca la función como libre de efectos
+                verificarCantidadArgumentos(args, 1);
+                ExpresionLisp f = args.get(0);
+                if (f instanceof Funcion) {
+                    Funcion func = (Funcion) f;
+                    return new Funcion(func.parametros, func.cuerpo, func.cierreLexico, true);
+                } else if (f.esSimbolo()) {
+                    return f; // La pureza de las funciones incorporadas es fija
+                }
+                throw new ExcepcionLisp("PURA requiere una función");
             } else if (op == simbolo.SUMAR) {
                 long resultado = 0;
                 for (ExpresionLisp arg : args) {
@@ -248,6 +605,191 @@ public class Interprete {
         }
     }
 
+    /**
+     * Retorna la longitud de una lista. Es O(1) para listas compactas.
+     *
+     * @throws ExcepcionLisp si la expresión no es una lista adecuada
+     */
+    private long longitud(ExpresionLisp lista) throws ExcepcionLisp {
+        if (lista instanceof listaCompacta) {
+            return ((listaCompacta) lista).longitud();
+        }
+        long longitud = 0;
+        ExpresionLisp actual = lista;
+        while (!actual.esAtomo()) {
+            longitud++;
+            actual = actual.resto();
+        }
+        if (actual != simbolo.NULO) {
+            throw new ExcepcionLisp("LONGITUD requiere una lista");
+        }
+        return longitud;
+    }
+
+    /**
+     * Obtiene el elemento de una lista en la posición dada. Es O(1) para listas compactas.
+     *
+     * @throws ExcepcionLisp si la posición está fuera de rango
+     */
+    private ExpresionLisp enesimo(ExpresionLisp lista, long indice) throws ExcepcionLisp {
+        if (lista instanceof listaCompacta) {
+            return ((listaCompacta) lista).obtener(indice);
+        }
+        ExpresionLisp actual = lista;
+        for (long i = 0; i < indice && !actual.esAtomo(); i++) {
+            actual = actual.resto();
+        }
+        if (indice < 0 || actual.esAtomo()) {
+            throw new ExcepcionLisp("Índice fuera de rango: " + indice);
+        }
+        return actual.primero();
+    }
+
+    /**
+     * Obtiene la ruta de archivo nombrada por una cadena, tal como se escribió.
+     * También se acepta un símbolo, pero su nombre está en mayúsculas, así
+     * que solo sirve para rutas escritas enteramente en mayúsculas.
+     * Falla si el acceso a archivos está prohibido (ver permitirArchivos).
+     */
+    private Path resolverRuta(ExpresionLisp nombre) throws ExcepcionLisp {
+        if (!archivosPermitidos) {
+            throw new ExcepcionLisp("El acceso a archivos no está permitido");
+        }
+        if (nombre instanceof cadena) {
+            return Paths.get(((cadena) nombre).obtenerTexto());
+        }
+        if (!nombre.esSimbolo()) {
+            throw new ExcepcionLisp("Se esperaba un nombre de archivo: " + nombre);
+        }
+        return Paths.get(((simbolo) nombre).obtenerNombre());
+    }
+
+    /**
+     * Obtiene el valor de un argumento numérico.
+     */
+    private long comoNumero(ExpresionLisp arg, String operacion) throws ExcepcionLisp {
+        if (!arg.esNumero()) {
+            throw new ExcepcionLisp(operacion + " requiere argumentos numéricos");
+        }
+        return ((numero) arg).obtenerValor();
+    }
+
+    /**
+     * Obtiene un argumento de tipo vector.
+     */
+    private vector comoVector(ExpresionLisp arg, String operacion) throws ExcepcionLisp {
+        if (!(arg instanceof vector)) {
+            throw new ExcepcionLisp(operacion + " requiere un vector: " + arg);
+        }
+        return (vector) arg;
+    }
+
+    /**
+     * Obtiene un argumento de tipo arena.
+     */
+    private arenaCeldas comoArena(ExpresionLisp arg, String operacion) throws ExcepcionLisp {
+        if (!(arg instanceof arenaCeldas)) {
+            throw new ExcepcionLisp(operacion + " requiere una arena: " + arg);
+        }
+        return (arenaCeldas) arg;
+    }
+
+    /**
+     * Aplica una operación elemento a elemento entre un vector y
+     * otro vector o un número.
+     */
+    private vector operarVectores(vector.Operacion operacion, List<ExpresionLisp> args, String nombre)
+            throws ExcepcionLisp {
+        verificarCantidadArgumentos(args, 2);
+        vector a = comoVector(args.get(0), nombre);
+        cobrarPasos(a.longitud());
+        if (args.get(1).esNumero()) {
+            return a.operar(operacion, ((numero) args.get(1)).obtenerValor());
+        }
+        return a.operar(operacion, comoVector(args.get(1), nombre));
+    }
+
+    /**
+     * Cuenta los pasos de una operación masiva contra el presupuesto activo, si lo hay.
+     */
+    private void cobrarPasos(long cantidad) throws ExcepcionLisp {
+        presupuesto limites = presupuesto.actual();
+        if (limites != null) {
+            limites.cobrarPasos(cantidad);
+        }
+    }
+
+    /**
+     * Cuenta celdas cons reservadas contra el presupuesto activo, si lo hay.
+     */
+    private void cobrarCeldas(long cantidad) throws ExcepcionLisp {
+        presupuesto limites = presupuesto.actual();
+        if (limites != null) {
+            limites.cobrarCeldas(cantidad);
+        }
+    }
+
+    /**
+     * Copia los elementos de una lista LISP a un arreglo.
+     *
+     * @throws ExcepcionLisp si la expresión no es una lista adecuada
+     */
+    private ExpresionLisp[] aArreglo(ExpresionLisp lista, String operacion) throws ExcepcionLisp {
+        if (lista instanceof listaCompacta) {
+            listaCompacta compacta = (listaCompacta) lista;
+            return Arrays.copyOfRange(compacta.elementos(), compacta.desde(), compacta.elementos().length);
+        }
+        List<ExpresionLisp> elementos = new ArrayList<>();
+        ExpresionLisp actual = lista;
+        while (!actual.esAtomo()) {
+            elementos.add(actual.primero());
+            actual = actual.resto();
+        }
+        if (actual != simbolo.NULO) {
+            throw new ExcepcionLisp(operacion + " requiere una lista");
+        }
+        return elementos.toArray(new ExpresionLisp[0]);
+    }
+
+    /**
+     * Aplica la función a cada elemento y devuelve los resultados en orden.
+     * Si hay suficientes elementos y la función es pura, el trabajo se reparte
+     * en la piscina con robo de trabajo.
+     */
+    private ExpresionLisp[] aplicarACada(ExpresionLisp funcion, ExpresionLisp[] elementos) throws ExcepcionLisp {
+        ExpresionLisp[] resultados = new ExpresionLisp[elementos.length];
+        if (elementos.length >= UMBRAL_PARALELO && esPura(funcion)) {
+            try {
+                futuro.PISCINA.invoke(new TareaAplicacion(funcion, elementos, resultados, 0, elementos.length,
+                                                          presupuesto.actual()));
+            } catch (RuntimeException e) {
+                throw futuro.desenvolver(e);
+            }
+        } else {
+            presupuesto limites = presupuesto.actual();
+            for (int i = 0; i < elementos.length; i++) {
+                if (limites != null) {
+                    limites.cobrarPaso();
+                }
+                resultados[i] = aplicar(funcion, List.of(elementos[i]));
+            }
+        }
+        return resultados;
+    }
+
+    /**
+     * Comprueba si aplicar la función no tiene efectos secundarios,
+     * de modo que puede aplicarse a varios elementos a la vez.
+     */
+    private boolean esPura(ExpresionLisp funcion) {
+        if (funcion instanceof Funcion) {
+            return ((Funcion) funcion).pura;
+        }
+        return funcion.esSimbolo() && funcion != simbolo.IMPRIMIR && funcion != simbolo.ESPERAR
+            && funcion != simbolo.EN_ARENA && funcion != simbolo.LIBERAR_ARENA
+            && funcion != simbolo.GUARDAR_IMAGEN && funcion != simbolo.CARGAR;
+    }
+
     /**
      * Verifica que el número de argumentos sea igual al esperado.
      */
@@ -257,6 +799,25 @@ public class Interprete {
         }
     }
 
+    /**
+     * Comprueba si dos expresiones S son el mismo objeto. Los números se
+     * comparan por valor, porque solo los pequeños se comparten; las listas
+     * compactas y las celdas de una arena, por su posición, porque cada
+     * acceso crea una vista nueva.
+     */
+    private static boolean mismoObjeto(ExpresionLisp a, ExpresionLisp b) {
+        if (a == b) {
+            return true;
+        }
+        if (a instanceof listaCompacta listaA && b instanceof listaCompacta listaB) {
+            return listaA.mismaVista(listaB);
+        }
+        if (a instanceof celdaArena celdaA && b instanceof celdaArena celdaB) {
+            return celdaA.arena == celdaB.arena && celdaA.indice == celdaB.indice;
+        }
+        return a.esNumero() && b.esNumero() && ((numero) a).obtenerValor() == ((numero) b).obtenerValor();
+    }
+
     /**
      * Comprueba si dos expresiones S son iguales en valor.
      */
@@ -269,6 +830,9 @@ public class Interprete {
             if (a.esNumero() && b.esNumero()) {
                 return ((numero) a).obtenerValor() == ((numero) b).obtenerValor();
             }
+            if ((a instanceof vector && b instanceof vector) || (a instanceof cadena && b instanceof cadena)) {
+                return a.equals(b);
+            }
             return false; // Los símbolos se comparan por referencia (==)
         }
         
@@ -287,7 +851,7 @@ public class Interprete {
     /**
      * Crea un contexto global con las definiciones estándar.
      */
-    private contexto crearContextoGlobal() {
+    static contexto crearContextoGlobal() {
         contexto ctx = new contexto();
         
         // Definir constantes
@@ -300,9 +864,42 @@ public class Interprete {
         ctx.establecer(simbolo.CONSTRUIR, simbolo.CONSTRUIR);
         ctx.establecer(simbolo.LISTA, simbolo.LISTA);
         ctx.establecer(simbolo.ES_ATOMO, simbolo.ES_ATOMO);
+        ctx.establecer(simbolo.LONGITUD, simbolo.LONGITUD);
+        ctx.establecer(simbolo.ENESIMO, simbolo.ENESIMO);
         ctx.establecer(simbolo.ES_IGUAL_REF, simbolo.ES_IGUAL_REF);
         ctx.establecer(simbolo.ES_IGUAL, simbolo.ES_IGUAL);
         ctx.establecer(simbolo.IMPRIMIR, simbolo.IMPRIMIR);
+        ctx.establecer(simbolo.ESPERAR, simbolo.ESPERAR);
+        ctx.establecer(simbolo.MAPEAR, simbolo.MAPEAR);
+        ctx.establecer(simbolo.FILTRAR, simbolo.FILTRAR);
+        ctx.establecer(simbolo.REDUCIR, simbolo.REDUCIR);
+        ctx.establecer(simbolo.PURA, simbolo.PURA);
+        ctx.establecer(simbolo.RANGO, simbolo.RANGO);
+        ctx.establecer(simbolo.LEER_FORMAS, simbolo.LEER_FORMAS);
+        
+        // Definir operaciones de vectores
+        ctx.establecer(simbolo.VECTOR, simbolo.VECTOR);
+        ctx.establecer(simbolo.VECTOR_RANGO, simbolo.VECTOR_RANGO);
+        ctx.establecer(simbolo.LISTA_A_VECTOR, simbolo.LISTA_A_VECTOR);
+        ctx.establecer(simbolo.VECTOR_A_LISTA, simbolo.VECTOR_A_LISTA);
+        ctx.establecer(simbolo.VECTOR_REF, simbolo.VECTOR_REF);
+        ctx.establecer(simbolo.VECTOR_LONGITUD, simbolo.VECTOR_LONGITUD);
+        ctx.establecer(simbolo.VECTOR_SUMAR, simbolo.VECTOR_SUMAR);
+        ctx.establecer(simbolo.VECTOR_RESTAR, simbolo.VECTOR_RESTAR);
+        ctx.establecer(simbolo.VECTOR_MULTIPLICAR, simbolo.VECTOR_MULTIPLICAR);
+        ctx.establecer(simbolo.VECTOR_SUMA, simbolo.VECTOR_SUMA);
+        ctx.establecer(simbolo.VECTOR_MINIMO, simbolo.VECTOR_MINIMO);
+        ctx.establecer(simbolo.VECTOR_MAXIMO, simbolo.VECTOR_MAXIMO);
+        ctx.establecer(simbolo.VECTOR_PRODUCTO, simbolo.VECTOR_PRODUCTO);
+        
+        // Definir operaciones de arenas
+        ctx.establecer(simbolo.CREAR_ARENA, simbolo.CREAR_ARENA);
+        ctx.establecer(simbolo.EN_ARENA, simbolo.EN_ARENA);
+        ctx.establecer(simbolo.LIBERAR_ARENA, simbolo.LIBERAR_ARENA);
+        
+        // Definir carga de archivos e imágenes del contexto global
+        ctx.establecer(simbolo.GUARDAR_IMAGEN, simbolo.GUARDAR_IMAGEN);
+        ctx.establecer(simbolo.CARGAR, simbolo.CARGAR);
         
         // Definir operadores aritméticos
         ctx.establecer(simbolo.SUMAR, simbolo.SUMAR);
@@ -318,9 +915,11 @@ public class Interprete {
     }
 
     /**
-     * Ejecuta el intérprete en un bucle leer-evaluar-imprimir (REPL).
+     * Ejecuta el intérprete en un bucle leer-evaluar-imprimir (REPL) sobre
+     * la entrada estándar. Solo el REPL lee de ella.
      */
     public void repl() {
+        lisp.analizador analizador = new analizador(new InputStreamReader(System.in));
         salida.println("Intérprete LISP");
         salida.println("Escribe expresiones LISP para evaluar, Ctrl+D para salir");
         
@@ -334,7 +933,7 @@ public class Interprete {
                     break; // Fin de entrada
                 }
                 
-                ExpresionLisp resultado = evaluar(expr, contextoGlobal);
+                ExpresionLisp resultado = ejecutar(expr, contextoGlobal);
                 salida.print("=> ");
                 resultado.imprimir(salida);
                 salida.println();
@@ -359,40 +958,132 @@ public class Interprete {
         if (s == null) {
             throw new ExcepcionLisp("Expresión vacía");
         }
-        return evaluar(s, contextoGlobal);
+        return ejecutar(s, contextoGlobal);
+    }
+
+    /**
+     * Evalúa una expresión LISP de cadena dentro de los límites dados.
+     *
+     * @throws ExcepcionLimiteExcedido si la evaluación agota algún límite
+     * @throws ExcepcionCancelada si la evaluación se cancela
+     */
+    public ExpresionLisp evaluar(String expr, presupuesto limites) throws ExcepcionLisp {
+        lisp.analizador analizadorTemp = new analizador(new StringReader(expr));
+        ExpresionLisp s = analizadorTemp.analizar();
+        if (s == null) {
+            throw new ExcepcionLisp("Expresión vacía");
+        }
+        return ejecutar(s, contextoGlobal, limites);
+    }
+
+    /**
+     * Evalúa en el contexto global todas las formas de un archivo fuente.
+     * Las formas analizadas se guardan en la caché fasl, de modo que volver
+     * a cargar el mismo contenido no lo analiza de nuevo.
+     *
+     * @return El valor de la última forma, o NULO si el archivo está vacío
+     * @throws ExcepcionLisp si el archivo no se puede leer o falla alguna forma
+     */
+    public ExpresionLisp cargar(Path ruta) throws ExcepcionLisp {
+        ExpresionLisp resultado = simbolo.NULO;
+        for (ExpresionLisp forma : fasl.formas(ruta)) {
+            resultado = ejecutar(forma, contextoGlobal);
+        }
+        return resultado;
+    }
+
+    /**
+     * Ejecuta un script por lotes: el análisis, la evaluación y la escritura
+     * de la salida avanzan a la vez en hilos distintos. Se detiene en el primer error.
+     *
+     * @return true si todas las formas se evaluaron sin error
+     */
+    public boolean ejecutarLote(Reader entrada, OutputStream salida) throws IOException, InterruptedException {
+        return lote.ejecutar(contextoGlobal, pilaExplicita, entrada, salida);
+    }
+
+    /**
+     * Guarda el contexto global, con sus funciones y la estructura compartida,
+     * en una imagen binaria.
+     *
+     * @throws ExcepcionLisp si algún valor alcanzable (futuros, secuencias
+     *         perezosas, arenas) no se puede guardar, o si falla la escritura
+     */
+    public void guardarImagen(Path ruta) throws ExcepcionLisp {
+        try {
+            imagen.guardar(contextoGlobal, ruta);
+        } catch (IOException e) {
+            throw new ExcepcionLisp("No se puede escribir " + ruta + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Carga una imagen guardada con guardarImagen sobre el contexto global.
+     * Evita analizar y evaluar de nuevo las definiciones al arrancar.
+     *
+     * @throws ExcepcionLisp si el archivo no se puede leer o no es una imagen válida
+     */
+    public void cargarImagen(Path ruta) throws ExcepcionLisp {
+        try {
+            imagen.cargar(ruta, contextoGlobal);
+        } catch (IOException e) {
+            throw new ExcepcionLisp("No se puede leer " + ruta + ": " + e.getMessage());
+        }
     }
 
     /**
      * Clase interna para representar funciones definidas por el usuario.
      */
-    private class Funcion extends ExpresionLisp {
+    static class Funcion extends ExpresionLisp {
         private final ExpresionLisp parametros;
         private final ExpresionLisp cuerpo;
         private final contexto cierreLexico;
+        private final boolean pura;
         
         public Funcion(ExpresionLisp parametros, ExpresionLisp cuerpo, contexto cierreLexico) {
+            this(parametros, cuerpo, cierreLexico, false);
+        }
+        
+        public Funcion(ExpresionLisp parametros, ExpresionLisp cuerpo, contexto cierreLexico, boolean pura) {
             this.parametros = parametros;
             this.cuerpo = cuerpo;
             this.cierreLexico = cierreLexico;
+            this.pura = pura;
         }
         
         public ExpresionLisp aplicar(List<ExpresionLisp> args, Interprete interprete) throws ExcepcionLisp {
-            // Convierte la lista de args a una lista LISP adecuada
-            ExpresionLisp listaArgs = simbolo.NULO;
-            for (int i = args.size() - 1; i >= 0; i--) {
-                listaArgs = new par(args.get(i), listaArgs);
-            }
-            
-            // Crea un nuevo contexto extendido con los parámetros enlazados a los argumentos
-            contexto nuevoContexto = cierreLexico.extender(parametros, listaArgs);
-            
             // Evalúa el cuerpo de la función en el nuevo contexto
-            return interprete.evaluar(cuerpo, nuevoContexto);
+            return interprete.ejecutar(cuerpo, enlazar(args));
+        }
+        
+        /**
+         * Crea un nuevo contexto extendido con los parámetros enlazados a los argumentos.
+         */
+        contexto enlazar(List<ExpresionLisp> args) throws ExcepcionLisp {
+            // Convierte la lista de args a una lista LISP adecuada
+            ExpresionLisp listaArgs = listaCompacta.desdeLista(args);
+            return cierreLexico.extender(parametros, listaArgs);
+        }
+        
+        ExpresionLisp parametros() {
+            return parametros;
+        }
+        
+        ExpresionLisp cuerpo() {
+            return cuerpo;
+        }
+        
+        contexto cierreLexico() {
+            return cierreLexico;
+        }
+        
+        boolean esPura() {
+            return pura;
         }
         
         @Override
         public void imprimir(PrintStream salida) {
-            salida.print("#<FUNCION>");
+            salida.print(pura ? "#<FUNCION PURA>" : "#<FUNCION>");
         }
         
         @Override
@@ -406,11 +1097,136 @@ public class Interprete {
         }
     }
 
+    /**
+     * Tarea que aplica una función a un rango de elementos,
+     * dividiéndolo en mitades hasta llegar al tamaño de bloque.
+     */
+    private class TareaAplicacion extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        // Las tareas nunca se serializan; solo viven en la piscina
+        private final transient ExpresionLisp funcion;
+        private final transient ExpresionLisp[] elementos;
+        private final transient ExpresionLisp[] resultados;
+        private final int desde;
+        private final int hasta;
+        private final transient presupuesto limites;
+
+        TareaAplicacion(ExpresionLisp funcion, ExpresionLisp[] elementos, ExpresionLisp[] resultados,
+                        int desde, int hasta, presupuesto limites) {
+            this.funcion = funcion;
+            this.elementos = elementos;
+            this.resultados = resultados;
+            this.desde = desde;
+            this.hasta = hasta;
+            this.limites = limites;
+        }
+
+        @Override
+        protected void compute() {
+            if (hasta - desde <= TAMANO_BLOQUE) {
+                try {
+                    if (limites == null) {
+                        aplicarBloque();
+                    } else {
+                        limites.ejecutar(this::aplicarBloque);
+                    }
+                } catch (ExcepcionLisp e) {
+                    throw new CompletionException(e);
+                }
+                return;
+            }
+            int medio = (desde + hasta) >>> 1;
+            invokeAll(new TareaAplicacion(funcion, elementos, resultados, desde, medio, limites),
+                      new TareaAplicacion(funcion, elementos, resultados, medio, hasta, limites));
+        }
+
+        private ExpresionLisp aplicarBloque() throws ExcepcionLisp {
+            // La vista del presupuesto es la de este hilo, no la del que creó la tarea
+            presupuesto local = presupuesto.actual();
+            for (int i = desde; i < hasta; i++) {
+                if (local != null) {
+                    local.cobrarPaso();
+                }
+                resultados[i] = aplicar(funcion, List.of(elementos[i]));
+            }
+            return simbolo.NULO;
+        }
+    }
+
     /**
      * Método principal.
      */
     public static void main(String[] args) {
         Interprete interprete = new Interprete();
-        interprete.repl();
+        boolean servidor = false;
+        int puerto = Servidor.PUERTO_PREDETERMINADO;
+        long limite = 0;
+        String archivoLote = null;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--pila")) {
+                interprete.usarPilaExplicita(true);
+            } else if (args[i].equals("--servidor")) {
+                // Sin autenticación: solo escucha en 127.0.0.1, y las sesiones
+                // no pueden leer ni escribir archivos
+                servidor = true;
+                if (i + 1 < args.length && args[i + 1].matches("\\d+")) {
+                    puerto = Integer.parseInt(args[++i]);
+                }
+            } else if (args[i].equals("--lote") && i + 1 < args.length) {
+                archivoLote = args[++i];
+            } else if (args[i].equals("--limite") && i + 1 < args.length) {
+                // Tiempo máximo de cada evaluación del servidor, en milisegundos
+                limite = Long.parseLong(args[++i]);
+            } else if (args[i].equals("--simbolos-debiles")) {
+                simbolo.usarTablaDebil();
+            } else if (args[i].equals("--imagen") && i + 1 < args.length) {
+                try {
+                    interprete.cargarImagen(Paths.get(args[++i]));
+                } catch (ExcepcionLisp e) {
+                    System.err.println("Error: " + e.getMessage());
+                    System.exit(1);
+                }
+            }
+        }
+        if (archivoLote != null) {
+            ejecutarArchivoLote(interprete, Paths.get(archivoLote));
+        } else if (servidor) {
+            servir(interprete, puerto, limite);
+        } else {
+            interprete.repl();
+        }
+    }
+
+    /**
+     * Ejecuta un archivo por lotes y termina con código 1 si hubo un error.
+     */
+    private static void ejecutarArchivoLote(Interprete interprete, Path archivo) {
+        try (Reader entrada = Files.newBufferedReader(archivo, StandardCharsets.UTF_8)) {
+            OutputStream salida = new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 1 << 16);
+            if (!interprete.ejecutarLote(entrada, salida)) {
+                System.exit(1);
+            }
+        } catch (IOException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.exit(1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Atiende conexiones locales sobre el contexto global del intérprete dado.
+     */
+    private static void servir(Interprete interprete, int puerto, long limite) {
+        try (Servidor servidor = new Servidor(interprete.contextoGlobal, puerto, limite)) {
+            servidor.usarPilaExplicita(interprete.pilaExplicita);
+            System.out.println("Servidor LISP en 127.0.0.1:" + servidor.puerto());
+            servidor.atender();
+        } catch (IOException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.exit(1);
+        }
     }
 }
@@ -0,0 +1,160 @@
+package lisp;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import javax.script.AbstractScriptEngine;
+import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngineFactory;
+import javax.script.ScriptException;
+
+/**
+ * Motor javax.script (JSR-223) para LISP.
+ *
+ * Los enlaces del ámbito del motor son un contexto LISP con las definiciones
+ * estándar (ver EnlacesLisp); si se le dan enlaces de otro tipo, se copian
+ * en un contexto nuevo antes de evaluar. El ámbito global no se consulta.
+ * Los scripts compilados guardan las formas ya analizadas, así que
+ * evaluarlos repetidamente no vuelve a analizar el texto.
+ */
+public final class MotorLisp extends AbstractScriptEngine implements Compilable {
+    private final ScriptEngineFactory fabrica;
+
+    // Intérprete asociado a los últimos escritor y enlaces usados, para no crear uno por evaluación
+    private volatile Salida ultimaSalida;
+
+    private record Salida(Writer escritor, contexto ctx, Interprete interprete) {
+    }
+
+    public MotorLisp(ScriptEngineFactory fabrica) {
+        this.fabrica = fabrica;
+        setBindings(new EnlacesLisp(Interprete.crearContextoGlobal()), ScriptContext.ENGINE_SCOPE);
+    }
+
+    @Override
+    public Object eval(String script, ScriptContext sc) throws ScriptException {
+        return eval(new StringReader(script), sc);
+    }
+
+    @Override
+    public Object eval(Reader lector, ScriptContext sc) throws ScriptException {
+        return ejecutar(analizar(lector), sc);
+    }
+
+    @Override
+    public CompiledScript compile(String script) throws ScriptException {
+        return compile(new StringReader(script));
+    }
+
+    @Override
+    public CompiledScript compile(Reader lector) throws ScriptException {
+        return new ScriptLisp(this, analizar(lector));
+    }
+
+    @Override
+    public Bindings createBindings() {
+        return new EnlacesLisp(Interprete.crearContextoGlobal());
+    }
+
+    @Override
+    public ScriptEngineFactory getFactory() {
+        return fabrica;
+    }
+
+    /**
+     * Evalúa las formas en orden sobre los enlaces del motor del contexto dado.
+     *
+     * @return El valor de la última forma (una cadena vuelve como String),
+     *         o NULO si no hay formas
+     */
+    Object ejecutar(List<ExpresionLisp> formas, ScriptContext sc) throws ScriptException {
+        contexto ctx = contextoPara(sc);
+        Interprete interprete = interpretePara(sc.getWriter(), ctx);
+        ExpresionLisp resultado = simbolo.NULO;
+        try {
+            for (ExpresionLisp forma : formas) {
+                resultado = interprete.ejecutar(forma, ctx);
+            }
+        } catch (ExcepcionLisp e) {
+            ScriptException error = new ScriptException(e.getMessage());
+            error.initCause(e);
+            throw error;
+        }
+        return EnlacesLisp.aJava(resultado);
+    }
+
+    private static List<ExpresionLisp> analizar(Reader lector) throws ScriptException {
+        try {
+            return new analizador(lector).analizarTodas();
+        } catch (ExcepcionLisp e) {
+            ScriptException error = new ScriptException(e.getMessage());
+            error.initCause(e);
+            throw error;
+        }
+    }
+
+    private contexto contextoPara(ScriptContext sc) {
+        Bindings enlaces = sc.getBindings(ScriptContext.ENGINE_SCOPE);
+        if (enlaces instanceof EnlacesLisp) {
+            return ((EnlacesLisp) enlaces).contexto();
+        }
+        EnlacesLisp copia = (EnlacesLisp) createBindings();
+        if (enlaces != null) {
+            copia.putAll(enlaces);
+        }
+        return copia.contexto();
+    }
+
+    /**
+     * Obtiene un intérprete sobre los enlaces dados, para que CARGAR y
+     * GUARDAR_IMAGEN actúen sobre ellos, que imprime en el escritor dado.
+     */
+    private Interprete interpretePara(Writer escritor, contexto ctx) {
+        Salida salida = ultimaSalida;
+        if (salida == null || salida.escritor() != escritor || salida.ctx() != ctx) {
+            PrintStream flujo = new PrintStream(new SalidaEscritor(escritor), true, StandardCharsets.UTF_8);
+            salida = new Salida(escritor, ctx, new Interprete(ctx, flujo));
+            ultimaSalida = salida;
+        }
+        return salida.interprete();
+    }
+
+    /**
+     * Adapta un Writer de javax.script a la salida en bytes de Interprete.
+     * Los bytes se acumulan y se decodifican al vaciar; PrintStream vacía
+     * después de cada cadena completa, así que no parte caracteres.
+     */
+    private static final class SalidaEscritor extends OutputStream {
+        private final Writer escritor;
+        private byte[] pendiente = new byte[256];
+        private int cantidad;
+
+        SalidaEscritor(Writer escritor) {
+            this.escritor = escritor;
+        }
+
+        @Override
+        public synchronized void write(int b) {
+            if (cantidad == pendiente.length) {
+                pendiente = Arrays.copyOf(pendiente, cantidad * 2);
+            }
+            pendiente[cantidad++] = (byte) b;
+        }
+
+        @Override
+        public synchronized void flush() throws IOException {
+            escritor.write(new String(pendiente, 0, cantidad, StandardCharsets.UTF_8));
+            escritor.flush();
+            cantidad = 0;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package lisp;
+
+import java.util.List;
+import javax.script.CompiledScript;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptException;
+
+/**
+ * Script LISP compilado: guarda las formas ya analizadas para evaluarlas
+ * tantas veces como se quiera sin volver a analizar el texto.
+ * Es inmutable, así que puede evaluarse desde varios hilos a la vez.
+ */
+public class ScriptLisp extends CompiledScript {
+    private final MotorLisp motor;
+    private final List<ExpresionLisp> formas;
+
+    ScriptLisp(MotorLisp motor, List<ExpresionLisp> formas) {
+        this.motor = motor;
+        this.formas = List.copyOf(formas);
+    }
+
+    @Override
+    public Object eval(ScriptContext sc) throws ScriptException {
+        return motor.ejecutar(formas, sc);
+    }
+
+    @Override
+    public ScriptEngine getEngine() {
+        return motor;
+    }
+}
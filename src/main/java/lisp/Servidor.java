@@ -0,0 +1,215 @@
+package lisp;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Servidor de evaluación en un socket local, para compartir una JVM ya
+ * caliente entre muchos scripts cortos.
+ *
+ * Cada conexión es una sesión con su propio contexto (hijo del global) y se
+ * atiende en un hilo virtual. Las expresiones se delimitan con el mismo
+ * analizador del REPL, así que un cliente puede enviar varias seguidas sin
+ * esperar respuesta; la salida solo se vacía cuando no quedan más
+ * expresiones pendientes en la entrada. Cada resultado se responde como en
+ * el REPL ("=> valor" o "Error: mensaje"), y el símbolo ESTADISTICAS
+ * responde con los contadores del servidor.
+ *
+ * No hay autenticación: cualquier proceso local puede conectarse, así que
+ * las sesiones no pueden usar las funciones que leen o escriben archivos
+ * (CARGAR, GUARDAR_IMAGEN, LEER_FORMAS). Un error al analizar la entrada
+ * descarta el resto de esa línea, pero no cierra la sesión.
+ */
+public final class Servidor implements AutoCloseable {
+    public static final int PUERTO_PREDETERMINADO = 4005;
+
+    private static final simbolo ESTADISTICAS = simbolo.internamente("ESTADISTICAS");
+
+    private final ServerSocketChannel canal;
+    private final contexto global;
+    private final long limiteMilisegundos;
+    private volatile boolean pilaExplicita;
+    private final long inicio = System.nanoTime();
+
+    // Contadores; LongAdder evita la contención entre sesiones
+    private final LongAdder evaluaciones = new LongAdder();
+    private final LongAdder errores = new LongAdder();
+    private final LongAdder nanosTotales = new LongAdder();
+    private final LongAccumulator nanosMaximo = new LongAccumulator(Math::max, 0);
+    private final AtomicInteger sesionesAbiertas = new AtomicInteger();
+    private final LongAdder sesionesTotales = new LongAdder();
+
+    /**
+     * Abre el servidor en la interfaz local.
+     *
+     * @param global El contexto del que heredan todas las sesiones
+     * @param puerto El puerto, o 0 para elegir uno libre
+     * @param limiteMilisegundos Tiempo máximo de cada evaluación, o 0 para no limitarlo
+     */
+    public Servidor(contexto global, int puerto, long limiteMilisegundos) throws IOException {
+        this.global = global;
+        this.canal = ServerSocketChannel.open();
+        this.canal.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), puerto));
+        this.limiteMilisegundos = limiteMilisegundos;
+    }
+
+    /**
+     * Elige el evaluador de las sesiones (ver Interprete.usarPilaExplicita).
+     */
+    public void usarPilaExplicita(boolean activar) {
+        this.pilaExplicita = activar;
+    }
+
+    /**
+     * Obtiene el puerto en el que escucha el servidor.
+     */
+    public int puerto() throws IOException {
+        return ((InetSocketAddress) canal.getLocalAddress()).getPort();
+    }
+
+    /**
+     * Acepta conexiones hasta que se cierre el servidor, cada una en un hilo virtual.
+     */
+    public void atender() throws IOException {
+        try {
+            while (true) {
+                SocketChannel cliente = canal.accept();
+                Thread.ofVirtual().name("sesion-lisp").start(() -> atenderSesion(cliente));
+            }
+        } catch (ClosedChannelException e) {
+            // Se cerró el servidor
+        }
+    }
+
+    /**
+     * Inicia el bucle de aceptación en un hilo virtual y retorna inmediatamente.
+     */
+    public Thread iniciar() {
+        return Thread.ofVirtual().name("servidor-lisp").start(() -> {
+            try {
+                atender();
+            } catch (IOException e) {
+                System.err.println("Error en el servidor: " + e.getMessage());
+            }
+        });
+    }
+
+    @Override
+    public void close() throws IOException {
+        canal.close();
+    }
+
+    /**
+     * Obtiene los contadores del servidor como lista de pares (NOMBRE valor).
+     */
+    public ExpresionLisp estadisticas() {
+        long cantidad = evaluaciones.sum();
+        long segundos = Math.max(1, (System.nanoTime() - inicio) / 1_000_000_000L);
+        return listaCompacta.crear(
+            contador("EVALUACIONES", cantidad),
+            contador("ERRORES", errores.sum()),
+            contador("POR_SEGUNDO", cantidad / segundos),
+            contador("LATENCIA_MEDIA_US", cantidad == 0 ? 0 : nanosTotales.sum() / cantidad / 1000),
+            contador("LATENCIA_MAXIMA_US", nanosMaximo.get() / 1000),
+            contador("SESIONES_ABIERTAS", sesionesAbiertas.get()),
+            contador("SESIONES_TOTALES", sesionesTotales.sum()));
+    }
+
+    private static ExpresionLisp contador(String nombre, long valor) {
+        return listaCompacta.crear(simbolo.internamente(nombre), numero.obtenerValor(valor));
+    }
+
+    private void atenderSesion(SocketChannel cliente) {
+        sesionesAbiertas.incrementAndGet();
+        sesionesTotales.increment();
+        try (SocketChannel conexion = cliente) {
+            BufferedReader lector = new BufferedReader(Channels.newReader(conexion, StandardCharsets.UTF_8));
+            PrintStream salida = new PrintStream(
+                new BufferedOutputStream(Channels.newOutputStream(conexion)), false, StandardCharsets.UTF_8);
+            analizador analizador = new analizador(lector);
+            contexto sesion = new contexto(global);
+            Interprete interprete = new Interprete(sesion, salida);
+            interprete.usarPilaExplicita(pilaExplicita);
+            interprete.permitirArchivos(false);
+            // El plazo vuelve a empezar con cada forma
+            presupuesto limites = new presupuesto(0, limiteMilisegundos, 0, 0);
+
+            while (true) {
+                ExpresionLisp forma;
+                try {
+                    forma = analizador.analizar();
+                } catch (ExcepcionLisp | RuntimeException | StackOverflowError e) {
+                    // Error de sintaxis, o anidamiento que agota la pila
+                    salida.println("Error: " + (e instanceof ExcepcionLisp ? e.getMessage() : e));
+                    salida.flush();
+                    // Lo que queda de la línea pertenece a la forma que falló
+                    if (salida.checkError() || lector.readLine() == null) {
+                        break;
+                    }
+                    continue;
+                }
+                if (forma == null) {
+                    break; // El cliente cerró la conexión
+                }
+                responder(forma, interprete, sesion, limites, salida);
+                // Con más expresiones ya recibidas, se agrupan las respuestas
+                if (!lector.ready()) {
+                    salida.flush();
+                }
+                if (salida.checkError()) {
+                    break;
+                }
+            }
+            salida.flush();
+        } catch (IOException e) {
+            // Conexión cortada por el cliente
+        } finally {
+            sesionesAbiertas.decrementAndGet();
+        }
+    }
+
+    private void responder(ExpresionLisp forma, Interprete interprete, contexto sesion,
+                           presupuesto limites, PrintStream salida) {
+        if (forma == ESTADISTICAS) {
+            salida.print("=> ");
+            estadisticas().imprimir(salida);
+            salida.println();
+            return;
+        }
+
+        long comienzo = System.nanoTime();
+        try {
+            limites.reiniciar();
+            ExpresionLisp resultado = interprete.ejecutar(forma, sesion, limites);
+            synchronized (salida) {
+                salida.print("=> ");
+                resultado.imprimir(salida);
+                salida.println();
+            }
+        } catch (ExcepcionLisp e) {
+            errores.increment();
+            salida.println("Error: " + e.getMessage());
+        } catch (RuntimeException | StackOverflowError e) {
+            // Un fallo interno solo invalida esta forma, no la sesión
+            errores.increment();
+            salida.println("Error: " + e);
+        } finally {
+            long duracion = System.nanoTime() - comienzo;
+            evaluaciones.increment();
+            nanosTotales.add(duracion);
+            nanosMaximo.accumulate(duracion);
+        }
+    }
+}
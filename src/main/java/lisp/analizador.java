@@ -3,11 +3,23 @@ package lisp;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.Reader;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Analizador para expresiones LISP.
  */
 public class analizador {
+    // Tipos de token
+    private static final int FIN = 0;
+    private static final int ABRE = 1;
+    private static final int CIERRA = 2;
+    private static final int CITA = 3;
+    private static final int PUNTO = 4;
+    private static final int CADENA = 5;
+    private static final int ATOMO = 6;
+
     private final Tokenizador tokenizador;
     
     public analizador(Reader lector) {
@@ -16,75 +28,157 @@ public class analizador {
     
     /**
      * Analiza una expresión LISP desde la entrada.
+     * Las listas abiertas se guardan en una pila propia y no en la de Java,
+     * así que una anidación muy profunda no agota la pila del hilo.
      * 
      * @return La expresión S analizada, o null al final de la entrada
      * @throws ExcepcionLisp si hay un error de sintaxis
      */
     public ExpresionLisp analizar() throws ExcepcionLisp {
-        String token = tokenizador.siguienteToken();
-        if (token == null) {
-            return null; // Fin de entrada
+        ArrayDeque<Abierta> abiertas = new ArrayDeque<>();
+        while (true) {
+            int token = tokenizador.siguienteToken();
+            Abierta actual = abiertas.peek();
+            if (actual != null && actual.resto != null && token != CIERRA) {
+                throw new ExcepcionLisp("Se esperaba un paréntesis de cierre después del par punteado");
+            }
+            if (token == FIN) {
+                if (actual == null) {
+                    return null; // Fin de entrada
+                } else if (actual.cita) {
+                    throw new ExcepcionLisp("Fin de entrada inesperado después de una cita");
+                } else if (actual.punteado) {
+                    throw new ExcepcionLisp("Se esperaba un paréntesis de cierre después del par punteado");
+                }
+                throw new ExcepcionLisp("Fin de entrada inesperado, falta un paréntesis de cierre");
+            }
+
+            ExpresionLisp valor;
+            switch (token) {
+                case ABRE:
+                    abiertas.push(new Abierta(false));
+                    continue;
+                case CITA:
+                    // Abreviatura de cita: 'x => (CITAR x)
+                    abiertas.push(new Abierta(true));
+                    continue;
+                case CIERRA:
+                    if (actual == null || actual.cita || (actual.punteado && actual.resto == null)) {
+                        throw new ExcepcionLisp("Paréntesis de cierre inesperado");
+                    }
+                    abiertas.pop();
+                    valor = actual.cerrar();
+                    break;
+                case PUNTO:
+                    if (actual != null && !actual.cita && !actual.punteado && !actual.elementos.isEmpty()) {
+                        // Notación de par punteado: sigue el resto y el cierre
+                        actual.punteado = true;
+                        continue;
+                    }
+                    valor = simbolo.internamente(".");
+                    break;
+                case CADENA:
+                    valor = new cadena(tokenizador.texto.toString());
+                    break;
+                default:
+                    valor = analizarAtomo(tokenizador.texto);
+            }
+
+            // Entrega el valor a la lista abierta, cerrando las citas que lo esperaban
+            while (true) {
+                Abierta destino = abiertas.peek();
+                if (destino == null) {
+                    return valor;
+                } else if (destino.cita) {
+                    abiertas.pop();
+                    valor = listaCompacta.crear(simbolo.CITAR, valor);
+                } else {
+                    destino.agregar(valor);
+                    break;
+                }
+            }
         }
-        
-        return analizarToken(token);
     }
     
-    private ExpresionLisp analizarToken(String token) throws ExcepcionLisp {
-        switch (token) {
-            case "(":
-                return analizarLista();
-            case ")":
-                throw new ExcepcionLisp("Paréntesis de cierre inesperado");
-            case "'":
-                // Abreviatura de cita: 'x => (CITAR x)
-                return new par(simbolo.CITAR, new par(analizar(), simbolo.NULO));
-            default:
-                return analizarAtomo(token);
+    /**
+     * Analiza todas las expresiones restantes de la entrada.
+     * 
+     * @return Las expresiones S en el orden en que aparecen
+     * @throws ExcepcionLisp si hay un error de sintaxis
+     */
+    public List<ExpresionLisp> analizarTodas() throws ExcepcionLisp {
+        List<ExpresionLisp> formas = new ArrayList<>();
+        ExpresionLisp forma;
+        while ((forma = analizar()) != null) {
+            formas.add(forma);
         }
+        return formas;
     }
     
-    private ExpresionLisp analizarLista() throws ExcepcionLisp {
-        String token = tokenizador.siguienteToken();
-        if (token == null) {
-            throw new ExcepcionLisp("Fin de entrada inesperado, falta un paréntesis de cierre");
+    /**
+     * Lista abierta, o cita que espera su expresión, durante el análisis.
+     */
+    private static final class Abierta {
+        final boolean cita;
+        final List<ExpresionLisp> elementos;
+        boolean punteado;
+        ExpresionLisp resto;
+
+        Abierta(boolean cita) {
+            this.cita = cita;
+            this.elementos = cita ? null : new ArrayList<>();
         }
-        
-        if (token.equals(")")) {
-            return simbolo.NULO; // Lista vacía
+
+        void agregar(ExpresionLisp valor) {
+            if (punteado) {
+                resto = valor;
+            } else {
+                elementos.add(valor);
+            }
         }
-        
-        ExpresionLisp primero = analizarToken(token);
-        
-        token = tokenizador.siguienteToken();
-        if (token == null) {
-            throw new ExcepcionLisp("Fin de entrada inesperado, falta un paréntesis de cierre");
+
+        ExpresionLisp cerrar() {
+            if (!punteado) {
+                // Lista regular (o vacía)
+                return listaCompacta.desdeLista(elementos);
+            }
+            ExpresionLisp lista = resto;
+            for (int i = elementos.size() - 1; i >= 0; i--) {
+                lista = new par(elementos.get(i), lista);
+            }
+            return lista;
         }
-        
-        if (token.equals(".")) {
-            // Notación de par punteado
-            ExpresionLisp resto = analizar();
-            token = tokenizador.siguienteToken();
-            if (!token.equals(")")) {
-                throw new ExcepcionLisp("Se esperaba un paréntesis de cierre después del par punteado");
+    }
+    
+    /**
+     * Convierte el texto de un átomo en número o símbolo. El texto es el
+     * búfer del tokenizador: solo se copia si nombra un símbolo nuevo.
+     */
+    private ExpresionLisp analizarAtomo(CharSequence texto) {
+        if (esNumero(texto)) {
+            try {
+                return numero.obtenerValor(Long.parseLong(texto, 0, texto.length(), 10));
+            } catch (NumberFormatException e) {
+                // No cabe en un long: se queda como símbolo
             }
-            return new par(primero, resto);
-        } else {
-            // Lista regular
-            tokenizador.devolver(token);
-            ExpresionLisp resto = analizarLista();
-            return new par(primero, resto);
         }
+        return simbolo.internamente(texto);
     }
     
-    private ExpresionLisp analizarAtomo(String token) {
-        // Intenta analizar como número
-        try {
-            long valor = Long.parseLong(token);
-            return numero.obtenerValor(valor);
-        } catch (NumberFormatException e) {
-            // Si no es un número, es un símbolo
-            return simbolo.internamente(token);
+    /**
+     * Comprueba si el texto tiene la forma de un entero: dígitos con un signo opcional.
+     */
+    private static boolean esNumero(CharSequence texto) {
+        int inicio = texto.charAt(0) == '-' || texto.charAt(0) == '+' ? 1 : 0;
+        if (inicio == texto.length()) {
+            return false;
         }
+        for (int i = inicio; i < texto.length(); i++) {
+            if (!Character.isDigit(texto.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
     }
     
     /**
@@ -92,7 +186,8 @@ public class analizador {
      */
     private static class Tokenizador {
         private final BufferedReader lector;
-        private String tokenDevuelto = null;
+        // Texto del último átomo o cadena; se reutiliza en cada token
+        final StringBuilder texto = new StringBuilder();
         
         public Tokenizador(Reader lector) {
             this.lector = lector instanceof BufferedReader ? 
@@ -101,24 +196,25 @@ public class analizador {
         }
         
         /**
-         * Devuelve el siguiente token de la entrada.
+         * Lee el siguiente token de la entrada. El texto de los átomos y las
+         * cadenas queda en texto hasta la siguiente llamada.
          * 
-         * @return El siguiente token, o null al final de la entrada
+         * @return El tipo del token, o FIN al final de la entrada
          * @throws ExcepcionLisp si hay un error de E/S
          */
-        public String siguienteToken() throws ExcepcionLisp {
-            if (tokenDevuelto != null) {
-                String token = tokenDevuelto;
-                tokenDevuelto = null;
-                return token;
-            }
-            
+        public int siguienteToken() throws ExcepcionLisp {
             try {
                 saltarEspaciosEnBlanco();
                 
                 int c = lector.read();
+                while (c == ';') {
+                    // Omitir comentario
+                    lector.readLine();
+                    saltarEspaciosEnBlanco();
+                    c = lector.read();
+                }
                 if (c == -1) {
-                    return null; // Fin de entrada
+                    return FIN; // Fin de entrada
                 }
                 
                 char ch = (char) c;
@@ -126,24 +222,26 @@ public class analizador {
                 // Maneja tokens de un solo carácter
                 switch (ch) {
                     case '(':
+                        return ABRE;
                     case ')':
+                        return CIERRA;
                     case '\'':
+                        return CITA;
                     case '.':
-                        return String.valueOf(ch);
-                    case ';':
-                        // Omitir comentario
-                        lector.readLine();
-                        return siguienteToken();
+                        return PUNTO;
+                    case '"':
+                        leerCadena();
+                        return CADENA;
                 }
                 
                 // Maneja tokens de múltiples caracteres (símbolos y números)
-                StringBuilder sb = new StringBuilder();
-                sb.append(ch);
+                texto.setLength(0);
+                texto.append(ch);
                 
                 lector.mark(1);
                 c = lector.read();
                 while (c != -1 && !esDelimitador((char) c)) {
-                    sb.append((char) c);
+                    texto.append((char) c);
                     lector.mark(1);
                     c = lector.read();
                 }
@@ -152,17 +250,28 @@ public class analizador {
                     lector.reset(); // Devuelve el delimitador
                 }
                 
-                return sb.toString();
+                return ATOMO;
             } catch (IOException e) {
                 throw new ExcepcionLisp("Error de E/S: " + e.getMessage());
             }
         }
         
         /**
-         * Devuelve un token para ser retornado en la próxima llamada a siguienteToken().
+         * Lee una cadena tras su comilla inicial, con \" y \\ como escapes,
+         * y deja su contenido en texto.
          */
-        public void devolver(String token) {
-            tokenDevuelto = token;
+        private void leerCadena() throws IOException, ExcepcionLisp {
+            texto.setLength(0);
+            int c;
+            while ((c = lector.read()) != '"') {
+                if (c == '\\') {
+                    c = lector.read();
+                }
+                if (c == -1) {
+                    throw new ExcepcionLisp("Fin de entrada inesperado, falta cerrar una cadena");
+                }
+                texto.append((char) c);
+            }
         }
         
         private void saltarEspaciosEnBlanco() throws IOException {
@@ -178,7 +287,7 @@ public class analizador {
         }
         
         private boolean esDelimitador(char c) {
-            return Character.isWhitespace(c) || c == '(' || c == ')' || c == '\'' || c == ';';
+            return Character.isWhitespace(c) || c == '(' || c == ')' || c == '\'' || c == ';' || c == '"';
         }
     }
 }
@@ -0,0 +1,224 @@
+package lisp;
+
+import java.io.PrintStream;
+import java.lang.ref.Cleaner;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Representa una arena de memoria fuera del montículo para celdas cons en LISP.
+ * Cada celda ocupa dos longs (primero y resto) con una etiqueta en los dos bits bajos:
+ * enteros, identificadores de símbolo, referencias a otras celdas, o referencias
+ * a objetos del montículo para los valores que no caben en un long.
+ * El recolector de basura no recorre las celdas, y liberar la arena
+ * libera toda su memoria de una vez. Una arena que deja de usarse sin
+ * liberarla se libera cuando la recolectan, junto con sus vistas.
+ */
+public final class arenaCeldas extends atomo {
+    private static final int BITS_BLOQUE = 16;
+    private static final int CELDAS_POR_BLOQUE = 1 << BITS_BLOQUE;
+    private static final long BYTES_POR_CELDA = 2 * Long.BYTES;
+
+    private static final int ETIQUETA_NUMERO = 0;
+    private static final int ETIQUETA_SIMBOLO = 1;
+    private static final int ETIQUETA_CELDA = 2;
+    private static final int ETIQUETA_OBJETO = 3;
+
+    // Los números de 62 bits caben en un long etiquetado
+    private static final long MINIMO_NUMERO = Long.MIN_VALUE >> 2;
+    private static final long MAXIMO_NUMERO = Long.MAX_VALUE >> 2;
+
+    // NULO siempre tiene el identificador 0
+    private static final long NULO_CODIFICADO = ETIQUETA_SIMBOLO;
+
+    private static final Cleaner LIMPIADOR = Cleaner.create();
+
+    private final Arena arena;
+    private final Cleaner.Cleanable limpieza;
+    private MemorySegment[] bloques = new MemorySegment[4];
+    private long celdasUsadas;
+    private volatile boolean liberada;
+
+    private final List<simbolo> simbolos = new ArrayList<>();
+    private final Map<simbolo, Integer> idsSimbolo = new HashMap<>();
+    private final List<ExpresionLisp> objetos = new ArrayList<>();
+
+    public arenaCeldas() {
+        this.arena = Arena.ofShared();
+        // La acción no debe referirse a la arenaCeldas, o nunca se recolectaría
+        Arena memoria = arena;
+        this.limpieza = LIMPIADOR.register(this, memoria::close);
+        simbolos.add(simbolo.NULO);
+        idsSimbolo.put(simbolo.NULO, 0);
+    }
+
+    /**
+     * Copia la expresión dada a esta arena.
+     * Las listas se copian celda a celda; los átomos se devuelven sin cambios.
+     *
+     * Las celdas copiadas se cobran al presupuesto activo, si lo hay.
+     *
+     * @return Una vista de la copia, o el mismo átomo
+     * @throws ExcepcionLisp si la arena ya fue liberada
+     */
+    public synchronized ExpresionLisp copiar(ExpresionLisp expr) throws ExcepcionLisp {
+        verificarViva();
+        long antes = celdasUsadas;
+        ExpresionLisp copia = decodificar(codificar(expr));
+        presupuesto limites = presupuesto.actual();
+        if (limites != null) {
+            limites.cobrarCeldas(celdasUsadas - antes);
+        }
+        return copia;
+    }
+
+    /**
+     * Libera toda la memoria de la arena. Las vistas existentes dejan de ser válidas.
+     */
+    public synchronized void liberar() {
+        if (!liberada) {
+            liberada = true;
+            limpieza.clean();
+            bloques = null;
+            simbolos.clear();
+            idsSimbolo.clear();
+            objetos.clear();
+        }
+    }
+
+    /**
+     * Comprueba si la arena ya fue liberada.
+     */
+    public boolean estaLiberada() {
+        return liberada;
+    }
+
+    /**
+     * Obtiene la cantidad de celdas reservadas en esta arena.
+     */
+    public synchronized long celdasUsadas() {
+        return celdasUsadas;
+    }
+
+    private long codificar(ExpresionLisp expr) throws ExcepcionLisp {
+        if (expr.esAtomo()) {
+            return codificarAtomo(expr);
+        }
+        if (expr instanceof celdaArena && ((celdaArena) expr).arena == this) {
+            return (((celdaArena) expr).indice << 2) | ETIQUETA_CELDA;
+        }
+
+        // Recorre la columna de la lista iterativamente; solo los elementos anidados recurren
+        long primera = reservarCelda();
+        long anterior = primera;
+        escribir(anterior, 0, codificar(expr.primero()));
+        ExpresionLisp actual = expr.resto();
+        while (!actual.esAtomo()) {
+            long celda = reservarCelda();
+            escribir(anterior, 1, (celda << 2) | ETIQUETA_CELDA);
+            escribir(celda, 0, codificar(actual.primero()));
+            anterior = celda;
+            actual = actual.resto();
+        }
+        escribir(anterior, 1, codificarAtomo(actual));
+        return (primera << 2) | ETIQUETA_CELDA;
+    }
+
+    private long codificarAtomo(ExpresionLisp atomo) {
+        if (atomo == simbolo.NULO) {
+            return NULO_CODIFICADO;
+        }
+        if (atomo.esNumero()) {
+            long valor = ((numero) atomo).obtenerValor();
+            if (valor >= MINIMO_NUMERO && valor <= MAXIMO_NUMERO) {
+                return (valor << 2) | ETIQUETA_NUMERO;
+            }
+        } else if (atomo.esSimbolo()) {
+            simbolo sim = (simbolo) atomo;
+            Integer id = idsSimbolo.get(sim);
+            if (id == null) {
+                id = simbolos.size();
+                simbolos.add(sim);
+                idsSimbolo.put(sim, id);
+            }
+            return ((long) id << 2) | ETIQUETA_SIMBOLO;
+        }
+        objetos.add(atomo);
+        return ((long) (objetos.size() - 1) << 2) | ETIQUETA_OBJETO;
+    }
+
+    ExpresionLisp decodificar(long valor) throws ExcepcionLisp {
+        long carga = valor >> 2;
+        switch ((int) (valor & 3)) {
+            case ETIQUETA_NUMERO:
+                return numero.obtenerValor(carga);
+            case ETIQUETA_SIMBOLO:
+                if (carga == 0) {
+                    return simbolo.NULO;
+                }
+                synchronized (this) {
+                    verificarViva();
+                    return simbolos.get((int) carga);
+                }
+            case ETIQUETA_CELDA:
+                return new celdaArena(this, carga);
+            default:
+                synchronized (this) {
+                    verificarViva();
+                    return objetos.get((int) carga);
+                }
+        }
+    }
+
+    /**
+     * Lee un campo de una celda: 0 para el primero, 1 para el resto.
+     */
+    long leer(long celda, int campo) throws ExcepcionLisp {
+        MemorySegment[] actuales = bloques;
+        if (liberada || actuales == null) {
+            throw new ExcepcionLisp("La arena ya fue liberada");
+        }
+        try {
+            MemorySegment bloque = actuales[(int) (celda >>> BITS_BLOQUE)];
+            long desplazamiento = (celda & (CELDAS_POR_BLOQUE - 1)) * BYTES_POR_CELDA + campo * Long.BYTES;
+            return bloque.get(ValueLayout.JAVA_LONG, desplazamiento);
+        } catch (IllegalStateException e) {
+            throw new ExcepcionLisp("La arena ya fue liberada");
+        }
+    }
+
+    private void escribir(long celda, int campo, long valor) {
+        MemorySegment bloque = bloques[(int) (celda >>> BITS_BLOQUE)];
+        long desplazamiento = (celda & (CELDAS_POR_BLOQUE - 1)) * BYTES_POR_CELDA + campo * Long.BYTES;
+        bloque.set(ValueLayout.JAVA_LONG, desplazamiento, valor);
+    }
+
+    private long reservarCelda() {
+        long celda = celdasUsadas++;
+        int numeroBloque = (int) (celda >>> BITS_BLOQUE);
+        if (numeroBloque == bloques.length) {
+            bloques = Arrays.copyOf(bloques, bloques.length * 2);
+        }
+        if (bloques[numeroBloque] == null) {
+            bloques[numeroBloque] = arena.allocate(CELDAS_POR_BLOQUE * BYTES_POR_CELDA, Long.BYTES);
+        }
+        return celda;
+    }
+
+    private void verificarViva() throws ExcepcionLisp {
+        if (liberada) {
+            throw new ExcepcionLisp("La arena ya fue liberada");
+        }
+    }
+
+    @Override
+    public void imprimir(PrintStream salida) {
+        salida.print(liberada ? "#<ARENA LIBERADA>" : "#<ARENA " + celdasUsadas() + " CELDAS>");
+    }
+}
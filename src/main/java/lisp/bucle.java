@@ -0,0 +1,235 @@
+package lisp;
+
+/**
+ * Estado de un bucle REPETIR o MIENTRAS en ejecución.
+ *
+ *   (REPETIR (var desde hasta [paso]) (acc inicial actualizar))
+ *   (MIENTRAS condicion (var1 inicial1 siguiente1) (var2 inicial2 siguiente2) ...)
+ *
+ * REPETIR recorre var desde "desde" hasta antes de "hasta" (paso 1 por
+ * omisión; con paso negativo, hacia abajo) y en cada vuelta enlaza acc al
+ * valor de actualizar. MIENTRAS, mientras la condición no sea NULO, evalúa
+ * todos los siguientes con los valores actuales y luego los asigna a la vez.
+ * El resultado es el valor final de la última variable.
+ *
+ * Los valores iniciales y los límites se evalúan una vez, en orden, en el contexto
+ * exterior. Todo lo demás se evalúa en un único contexto del bucle, cuyos
+ * enlaces se actualizan en su lugar en cada vuelta; las funciones definidas
+ * dentro ven esas actualizaciones. El bucle no evalúa nada por sí mismo: el
+ * evaluador pide la siguiente expresión, la evalúa en entorno() y devuelve
+ * su valor con recibir(), así que la maquinaria del bucle no reserva memoria
+ * en cada vuelta. Un contador fuera de la caché de números crea un número
+ * nuevo por vuelta, que se recolecta en cuanto el bucle avanza.
+ */
+final class bucle {
+    private final boolean repetir;
+    private final contexto exterior;
+    private final presupuesto limites = presupuesto.actual();
+
+    // Expresiones que se evalúan, en orden, antes de la primera vuelta:
+    // en REPETIR desde, hasta, [paso] y el inicial del acumulador;
+    // en MIENTRAS el inicial de cada variable
+    private final ExpresionLisp[] preparacion;
+    private final ExpresionLisp[] previos;
+
+    // Variables del bucle y la expresión que da su valor en la próxima vuelta.
+    // En REPETIR, la primera es el contador y su expresión no se usa.
+    private final simbolo[] variables;
+    private final ExpresionLisp[] siguientes;
+    private final ExpresionLisp[] valores;
+    private final ExpresionLisp condicion;
+
+    private long contador;
+    private long hasta;
+    private long paso = 1;
+
+    private contexto marco;
+    // Qué expresión se está evaluando: en la preparación, el índice en
+    // preparacion; en cada vuelta, -1 para la condición o el índice en siguientes
+    private int pendiente;
+    private boolean preparado;
+    private boolean terminado;
+
+    private bucle(boolean repetir, contexto exterior, ExpresionLisp[] preparacion,
+                  simbolo[] variables, ExpresionLisp[] siguientes, ExpresionLisp condicion) {
+        this.repetir = repetir;
+        this.exterior = exterior;
+        this.preparacion = preparacion;
+        this.previos = new ExpresionLisp[preparacion.length];
+        this.variables = variables;
+        this.siguientes = siguientes;
+        this.valores = new ExpresionLisp[variables.length];
+        this.condicion = condicion;
+    }
+
+    /**
+     * Prepara un bucle a partir del resto de su forma.
+     *
+     * @param op REPETIR o MIENTRAS
+     * @param ctx El contexto en el que aparece el bucle
+     */
+    static bucle crear(simbolo op, ExpresionLisp resto, contexto ctx) throws ExcepcionLisp {
+        return op == simbolo.REPETIR ? crearRepetir(resto, ctx) : crearMientras(resto, ctx);
+    }
+
+    private static bucle crearRepetir(ExpresionLisp resto, contexto ctx) throws ExcepcionLisp {
+        ExpresionLisp rango = longitud(resto) == 2 ? resto.primero() : simbolo.NULO;
+        ExpresionLisp acumulador = longitud(resto) == 2 ? resto.resto().primero() : simbolo.NULO;
+        int largoRango = longitud(rango);
+        if ((largoRango != 3 && largoRango != 4) || longitud(acumulador) != 3
+            || !rango.primero().esSimbolo() || !acumulador.primero().esSimbolo()) {
+            throw new ExcepcionLisp("REPETIR espera (variable desde hasta [paso]) (acumulador inicial actualizar)");
+        }
+        ExpresionLisp[] preparacion = new ExpresionLisp[largoRango];
+        ExpresionLisp limites = rango.resto();
+        for (int i = 0; i < largoRango - 1; i++, limites = limites.resto()) {
+            preparacion[i] = limites.primero();
+        }
+        preparacion[largoRango - 1] = acumulador.resto().primero();
+        simbolo[] variables = {(simbolo) rango.primero(), (simbolo) acumulador.primero()};
+        ExpresionLisp[] siguientes = {null, acumulador.resto().resto().primero()};
+        return new bucle(true, ctx, preparacion, variables, siguientes, null);
+    }
+
+    private static bucle crearMientras(ExpresionLisp resto, contexto ctx) throws ExcepcionLisp {
+        int cantidad = longitud(resto) - 1;
+        if (cantidad < 1) {
+            throw new ExcepcionLisp("MIENTRAS espera una condición y al menos una (variable inicial siguiente)");
+        }
+        simbolo[] variables = new simbolo[cantidad];
+        ExpresionLisp[] iniciales = new ExpresionLisp[cantidad];
+        ExpresionLisp[] siguientes = new ExpresionLisp[cantidad];
+        ExpresionLisp clausulas = resto.resto();
+        for (int i = 0; i < cantidad; i++, clausulas = clausulas.resto()) {
+            ExpresionLisp clausula = clausulas.primero();
+            if (longitud(clausula) != 3 || !clausula.primero().esSimbolo()) {
+                throw new ExcepcionLisp("MIENTRAS espera cláusulas (variable inicial siguiente)");
+            }
+            variables[i] = (simbolo) clausula.primero();
+            iniciales[i] = clausula.resto().primero();
+            siguientes[i] = clausula.resto().resto().primero();
+        }
+        return new bucle(false, ctx, iniciales, variables, siguientes, resto.primero());
+    }
+
+    /**
+     * Obtiene la siguiente expresión a evaluar en entorno(), o null si el
+     * bucle terminó y su valor está en resultado().
+     */
+    ExpresionLisp siguiente() throws ExcepcionLisp {
+        if (!preparado) {
+            return preparacion[pendiente];
+        }
+        if (terminado) {
+            return null;
+        }
+        if (pendiente == -1) {
+            // Comienzo de una vuelta
+            if (limites != null) {
+                limites.cobrarPaso();
+            }
+            if (!repetir) {
+                return condicion;
+            }
+            if (paso > 0 ? contador >= hasta : contador <= hasta) {
+                terminado = true;
+                return null;
+            }
+            marco.establecer(variables[0], numero.obtenerValor(contador));
+            pendiente = 1;
+        }
+        return siguientes[pendiente];
+    }
+
+    /**
+     * Contexto en el que se evalúa la expresión obtenida con siguiente().
+     */
+    contexto entorno() {
+        return preparado ? marco : exterior;
+    }
+
+    /**
+     * Recibe el valor de la expresión obtenida con siguiente().
+     */
+    void recibir(ExpresionLisp valor) throws ExcepcionLisp {
+        if (!preparado) {
+            previos[pendiente++] = valor;
+            if (pendiente == preparacion.length) {
+                preparar();
+            }
+        } else if (pendiente == -1) {
+            // Condición de MIENTRAS
+            if (valor == simbolo.NULO) {
+                terminado = true;
+            } else {
+                pendiente = 0;
+            }
+        } else {
+            valores[pendiente++] = valor;
+            if (pendiente == siguientes.length) {
+                terminarVuelta();
+            }
+        }
+    }
+
+    /**
+     * Valor final del bucle, una vez que siguiente() devolvió null.
+     */
+    ExpresionLisp resultado() throws ExcepcionLisp {
+        return marco.obtener(variables[variables.length - 1]);
+    }
+
+    private void preparar() throws ExcepcionLisp {
+        marco = new contexto(exterior);
+        if (repetir) {
+            contador = entero(previos[0], "desde");
+            hasta = entero(previos[1], "hasta");
+            if (previos.length == 4) {
+                paso = entero(previos[2], "paso");
+                if (paso == 0) {
+                    throw new ExcepcionLisp("REPETIR requiere un paso distinto de cero");
+                }
+            }
+            marco.establecer(variables[0], previos[0]);
+            marco.establecer(variables[1], previos[previos.length - 1]);
+        } else {
+            for (int i = 0; i < variables.length; i++) {
+                marco.establecer(variables[i], previos[i]);
+            }
+        }
+        preparado = true;
+        pendiente = -1;
+    }
+
+    private void terminarVuelta() {
+        if (repetir) {
+            marco.establecer(variables[1], valores[1]);
+            long proximo = contador + paso;
+            // Si el contador se desborda, ya pasó del límite
+            if ((proximo > contador) != (paso > 0)) {
+                terminado = true;
+            }
+            contador = proximo;
+        } else {
+            for (int i = 0; i < variables.length; i++) {
+                marco.establecer(variables[i], valores[i]);
+            }
+        }
+        pendiente = -1;
+    }
+
+    private static long entero(ExpresionLisp valor, String nombre) throws ExcepcionLisp {
+        if (!valor.esNumero()) {
+            throw new ExcepcionLisp("REPETIR requiere un número en " + nombre);
+        }
+        return ((numero) valor).obtenerValor();
+    }
+
+    private static int longitud(ExpresionLisp lista) throws ExcepcionLisp {
+        int n = 0;
+        for (ExpresionLisp actual = lista; !actual.esAtomo(); actual = actual.resto()) {
+            n++;
+        }
+        return n;
+    }
+}
@@ -0,0 +1,48 @@
+package lisp;
+
+import java.io.PrintStream;
+
+/**
+ * Representa una cadena de texto en LISP, escrita entre comillas dobles.
+ * A diferencia de los símbolos, conserva las mayúsculas y minúsculas tal
+ * como se escribieron, así que sirve para nombrar archivos.
+ */
+public class cadena extends atomo {
+    private final String texto;
+
+    public cadena(String texto) {
+        this.texto = texto;
+    }
+
+    /**
+     * Obtiene el texto de esta cadena.
+     */
+    public String obtenerTexto() {
+        return texto;
+    }
+
+    @Override
+    public void imprimir(PrintStream salida) {
+        salida.print('"');
+        for (int i = 0; i < texto.length(); i++) {
+            char c = texto.charAt(i);
+            if (c == '"' || c == '\\') {
+                salida.print('\\');
+            }
+            salida.print(c);
+        }
+        salida.print('"');
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) return true;
+        if (!(obj instanceof cadena)) return false;
+        return texto.equals(((cadena) obj).texto);
+    }
+
+    @Override
+    public int hashCode() {
+        return texto.hashCode();
+    }
+}
@@ -0,0 +1,36 @@
+package lisp;
+
+import java.io.PrintStream;
+
+/**
+ * Representa una celda cons guardada en una arena fuera del montículo.
+ * Es solo una vista: los campos se decodifican de la arena en cada acceso.
+ */
+public class celdaArena extends ExpresionLisp {
+    final arenaCeldas arena;
+    final long indice;
+
+    celdaArena(arenaCeldas arena, long indice) {
+        this.arena = arena;
+        this.indice = indice;
+    }
+
+    @Override
+    public ExpresionLisp primero() throws ExcepcionLisp {
+        return arena.decodificar(arena.leer(indice, 0));
+    }
+
+    @Override
+    public ExpresionLisp resto() throws ExcepcionLisp {
+        return arena.decodificar(arena.leer(indice, 1));
+    }
+
+    @Override
+    public void imprimir(PrintStream salida) {
+        if (arena.estaLiberada()) {
+            salida.print("#<CELDA LIBERADA>");
+            return;
+        }
+        imprimirComoLista(salida);
+    }
+}
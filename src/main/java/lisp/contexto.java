@@ -1,11 +1,13 @@
 package lisp;
 
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Representa un contexto para enlaces de variables en LISP.
  * Los contextos pueden anidarse (para ámbito léxico).
+ * Son seguros para hilos, ya que PARALELO y FUTURO evalúan sobre el mismo contexto.
  */
 public class contexto {
     private final Map<simbolo, ExpresionLisp> enlaces;
@@ -22,7 +24,7 @@ public class contexto {
      * Crea un nuevo contexto con el padre dado.
      */
     public contexto(contexto padre) {
-        this.enlaces = new HashMap<>();
+        this.enlaces = new ConcurrentHashMap<>();
         this.padre = padre;
     }
     
@@ -33,8 +35,9 @@ public class contexto {
      * @throws ExcepcionLisp si el símbolo no está enlazado en ningún contexto
      */
     public ExpresionLisp obtener(simbolo simbolo) throws ExcepcionLisp {
-        if (enlaces.containsKey(simbolo)) {
-            return enlaces.get(simbolo);
+        ExpresionLisp valor = enlaces.get(simbolo);
+        if (valor != null) {
+            return valor;
         } else if (padre != null) {
             return padre.obtener(simbolo);
         } else {
@@ -42,6 +45,20 @@ public class contexto {
         }
     }
     
+    /**
+     * Obtiene el contexto padre, o null si este es un contexto raíz.
+     */
+    contexto padre() {
+        return padre;
+    }
+    
+    /**
+     * Obtiene una vista de solo lectura de los enlaces propios de este contexto.
+     */
+    Map<simbolo, ExpresionLisp> enlaces() {
+        return Collections.unmodifiableMap(enlaces);
+    }
+    
     /**
      * Enlaza el símbolo dado al valor dado en este contexto.
      */
@@ -49,6 +66,15 @@ public class contexto {
         enlaces.put(simbolo, valor);
     }
     
+    /**
+     * Elimina el enlace del símbolo dado en este contexto, sin tocar los padres.
+     * 
+     * @return El valor que tenía enlazado, o null si no estaba enlazado aquí
+     */
+    public ExpresionLisp eliminar(simbolo simbolo) {
+        return enlaces.remove(simbolo);
+    }
+    
     /**
      * Actualiza el enlace del símbolo dado al valor dado.
      * Si el símbolo ya está enlazado en un contexto padre,
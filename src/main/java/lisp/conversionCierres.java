@@ -0,0 +1,344 @@
+package lisp;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Conversión de cierres: análisis de variables libres que reescribe cada
+ * DEFINIR_FUNCION anidada en el cuerpo de una función de nivel superior,
+ * agregándole un planCierre.
+ *
+ * Una variable libre solo se captura por copia si su enlace más cercano es
+ * un parámetro que el cuerpo de su función nunca reasigna, de modo que copiar
+ * su valor no cambia el resultado. La función puede referirse a sí misma por
+ * su nombre. Cualquier otra variable libre enlazada en un marco intermedio
+ * hace que la función conserve la cadena completa.
+ *
+ * Los bucles REPETIR y MIENTRAS también son ámbitos, porque evalúan en su
+ * propio contexto. Sus variables cambian en cada vuelta, así que nunca se
+ * copian: una función que las refiere conserva la cadena completa.
+ */
+final class conversionCierres {
+
+    /**
+     * Ámbito estático de una función o un bucle: sus parámetros o variables y
+     * los nombres que su cuerpo enlaza con ASIGNAR o DEFINIR_FUNCION (sin
+     * entrar en funciones anidadas). La profundidad cuenta los contextos que
+     * se crean desde el nivel superior hasta este ámbito.
+     */
+    private static final class Ambito {
+        final Set<simbolo> parametros;
+        final Map<simbolo, Integer> asignadas = new HashMap<>();
+        final Ambito padre;
+        final int profundidad;
+
+        Ambito(ExpresionLisp parametros, ExpresionLisp cuerpo, Ambito padre) {
+            this.parametros = nombresParametros(parametros);
+            this.padre = padre;
+            this.profundidad = padre == null ? 1 : padre.profundidad + 1;
+            reunirAsignaciones(cuerpo);
+        }
+
+        Ambito(Set<simbolo> variables, List<ExpresionLisp> internas, Ambito padre) {
+            this.parametros = variables;
+            this.padre = padre;
+            this.profundidad = padre.profundidad + 1;
+            // Las variables de un bucle se reasignan en cada vuelta
+            for (simbolo variable : variables) {
+                asignadas.merge(variable, 1, Integer::sum);
+            }
+            for (ExpresionLisp expr : internas) {
+                reunirAsignaciones(expr);
+            }
+        }
+
+        private void reunirAsignaciones(ExpresionLisp expr) {
+            if (!esListaDeCodigo(expr)) {
+                return;
+            }
+            ExpresionLisp cabeza = primero(expr);
+            if (cabeza == simbolo.CITAR) {
+                return;
+            }
+            if ((cabeza == simbolo.ASIGNAR || cabeza == simbolo.DEFINIR_FUNCION)
+                && elemento(expr, 1).esSimbolo()) {
+                asignadas.merge((simbolo) elemento(expr, 1), 1, Integer::sum);
+                if (cabeza == simbolo.DEFINIR_FUNCION) {
+                    return; // El cuerpo anidado tiene su propio ámbito
+                }
+            }
+            for (ExpresionLisp actual = expr; actual instanceof listaCompacta || actual instanceof par;
+                 actual = resto(actual)) {
+                reunirAsignaciones(primero(actual));
+            }
+        }
+    }
+
+    private conversionCierres() {
+    }
+
+    /**
+     * Reescribe el cuerpo de una función de nivel superior, agregando un plan
+     * de captura a cada función anidada.
+     *
+     * @return El cuerpo reescrito, o el mismo si no tiene funciones anidadas
+     */
+    static ExpresionLisp convertir(ExpresionLisp parametros, ExpresionLisp cuerpo) {
+        return reescribir(cuerpo, new Ambito(parametros, cuerpo, null), new HashSet<>());
+    }
+
+    /**
+     * Reescribe la expresión y agrega a libres los símbolos que refiere
+     * y no enlaza ninguna función anidada dentro de ella.
+     */
+    private static ExpresionLisp reescribir(ExpresionLisp expr, Ambito ambito, Set<simbolo> libres) {
+        if (expr.esSimbolo()) {
+            if (expr != simbolo.NULO && expr != simbolo.VERDADERO) {
+                libres.add((simbolo) expr);
+            }
+            return expr;
+        }
+        if (!esListaDeCodigo(expr)) {
+            return expr;
+        }
+
+        ExpresionLisp cabeza = primero(expr);
+        if (cabeza == simbolo.CITAR) {
+            return expr;
+        }
+        if (cabeza == simbolo.DEFINIR_FUNCION && longitud(expr) == 4) {
+            return reescribirFuncion(expr, ambito, libres);
+        }
+        if ((cabeza == simbolo.REPETIR || cabeza == simbolo.MIENTRAS) && esBucleValido(expr)) {
+            return reescribirBucle(expr, ambito, libres);
+        }
+
+        // Reescribe cada elemento; en ASIGNAR el destino no es una referencia,
+        // y las cláusulas de CONDICIONAL se recorren como listas de expresiones
+        ExpresionLisp[] elementos = new ExpresionLisp[longitud(expr)];
+        boolean cambio = false;
+        int i = 0;
+        for (ExpresionLisp actual = expr; actual != simbolo.NULO; actual = resto(actual), i++) {
+            ExpresionLisp elemento = primero(actual);
+            ExpresionLisp nuevo;
+            if (cabeza == simbolo.ASIGNAR && i == 1) {
+                nuevo = elemento;
+            } else if (cabeza == simbolo.CONDICIONAL && i > 0 && esListaDeCodigo(elemento)) {
+                nuevo = reescribirClausula(elemento, ambito, libres);
+            } else {
+                nuevo = reescribir(elemento, ambito, libres);
+            }
+            cambio |= nuevo != elemento;
+            elementos[i] = nuevo;
+        }
+        return cambio ? listaCompacta.crear(elementos) : expr;
+    }
+
+    private static ExpresionLisp reescribirClausula(ExpresionLisp clausula, Ambito ambito, Set<simbolo> libres) {
+        ExpresionLisp[] elementos = new ExpresionLisp[longitud(clausula)];
+        boolean cambio = false;
+        int i = 0;
+        for (ExpresionLisp actual = clausula; actual != simbolo.NULO; actual = resto(actual), i++) {
+            ExpresionLisp elemento = primero(actual);
+            elementos[i] = reescribir(elemento, ambito, libres);
+            cambio |= elementos[i] != elemento;
+        }
+        return cambio ? listaCompacta.crear(elementos) : clausula;
+    }
+
+    /**
+     * Reescribe (DEFINIR_FUNCION nombre params cuerpo) definida en el ámbito
+     * dado como (DEFINIR_FUNCION nombre params cuerpo' plan).
+     */
+    private static ExpresionLisp reescribirFuncion(ExpresionLisp forma, Ambito ambito, Set<simbolo> libres) {
+        ExpresionLisp nombre = elemento(forma, 1);
+        ExpresionLisp parametros = elemento(forma, 2);
+        ExpresionLisp cuerpo = elemento(forma, 3);
+        if (!nombre.esSimbolo()) {
+            return forma;
+        }
+
+        Ambito propio = new Ambito(parametros, cuerpo, ambito);
+        Set<simbolo> libresPropios = new LinkedHashSet<>();
+        ExpresionLisp nuevoCuerpo = reescribir(cuerpo, propio, libresPropios);
+        libresPropios.removeAll(propio.parametros);
+
+        planCierre plan = planificar((simbolo) nombre, libresPropios, ambito);
+        // Lo que la función anidada refiere lo refiere también la que la contiene
+        libres.addAll(libresPropios);
+        return listaCompacta.crear(simbolo.DEFINIR_FUNCION, nombre, parametros, nuevoCuerpo, plan);
+    }
+
+    /**
+     * Reescribe un bucle: los valores iniciales y los límites se reescriben en
+     * el ámbito que lo contiene, y lo que se evalúa en cada vuelta en el del bucle.
+     */
+    private static ExpresionLisp reescribirBucle(ExpresionLisp forma, Ambito ambito, Set<simbolo> libres) {
+        boolean repetir = primero(forma) == simbolo.REPETIR;
+        ExpresionLisp[] partes = elementos(forma);
+        ExpresionLisp[][] clausulas = new ExpresionLisp[partes.length][];
+        Set<simbolo> variables = new HashSet<>();
+        List<ExpresionLisp> internas = new ArrayList<>();
+        if (!repetir) {
+            internas.add(partes[1]); // La condición
+        }
+        for (int i = repetir ? 1 : 2; i < partes.length; i++) {
+            clausulas[i] = elementos(partes[i]);
+            variables.add((simbolo) clausulas[i][0]);
+            if (!repetir || i == 2) {
+                internas.add(clausulas[i][2]);
+            }
+        }
+
+        Ambito propio = new Ambito(variables, internas, ambito);
+        Set<simbolo> libresInternos = new HashSet<>();
+        boolean cambio = false;
+        if (!repetir) {
+            ExpresionLisp condicion = reescribir(partes[1], propio, libresInternos);
+            cambio = condicion != partes[1];
+            partes[1] = condicion;
+        }
+        for (int i = repetir ? 1 : 2; i < partes.length; i++) {
+            boolean cambioClausula = false;
+            for (int j = 1; j < clausulas[i].length; j++) {
+                boolean interna = j == 2 && (!repetir || i == 2);
+                ExpresionLisp nueva = interna
+                    ? reescribir(clausulas[i][j], propio, libresInternos)
+                    : reescribir(clausulas[i][j], ambito, libres);
+                cambioClausula |= nueva != clausulas[i][j];
+                clausulas[i][j] = nueva;
+            }
+            if (cambioClausula) {
+                partes[i] = listaCompacta.crear(clausulas[i]);
+                cambio = true;
+            }
+        }
+        libresInternos.removeAll(variables);
+        libres.addAll(libresInternos);
+        return cambio ? listaCompacta.crear(partes) : forma;
+    }
+
+    /**
+     * Comprueba que el bucle tenga la forma que espera bucle.crear; uno mal
+     * formado fallará al evaluarse, y se recorre como cualquier otra lista.
+     */
+    private static boolean esBucleValido(ExpresionLisp forma) {
+        boolean repetir = primero(forma) == simbolo.REPETIR;
+        int largo = longitud(forma);
+        if (repetir ? largo != 3 : largo < 3) {
+            return false;
+        }
+        int i = 0;
+        for (ExpresionLisp actual = forma; actual != simbolo.NULO; actual = resto(actual), i++) {
+            ExpresionLisp clausula = primero(actual);
+            if (i == 0 || (!repetir && i == 1)) {
+                continue;
+            }
+            if (!esListaDeCodigo(clausula) || !primero(clausula).esSimbolo()) {
+                return false;
+            }
+            int largoClausula = longitud(clausula);
+            if (largoClausula != 3 && !(repetir && i == 1 && largoClausula == 4)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static planCierre planificar(simbolo nombre, Set<simbolo> libres, Ambito ambito) {
+        Set<simbolo> capturadas = new LinkedHashSet<>();
+        boolean autorreferencia = false;
+        for (simbolo variable : libres) {
+            Ambito enlace = ambito;
+            while (enlace != null && !enlace.parametros.contains(variable)
+                   && !enlace.asignadas.containsKey(variable)) {
+                enlace = enlace.padre;
+            }
+            if (enlace == null) {
+                continue; // Se resuelve en el nivel superior
+            }
+            Integer asignaciones = enlace.asignadas.get(variable);
+            if (variable == nombre && enlace == ambito && asignaciones == 1
+                && !enlace.parametros.contains(variable)) {
+                autorreferencia = true;
+            } else if (asignaciones == null) {
+                capturadas.add(variable);
+            } else {
+                return planCierre.CADENA_COMPLETA;
+            }
+        }
+        return new planCierre(capturadas.toArray(new simbolo[0]), ambito.profundidad, autorreferencia);
+    }
+
+    private static Set<simbolo> nombresParametros(ExpresionLisp parametros) {
+        Set<simbolo> nombres = new HashSet<>();
+        ExpresionLisp actual = parametros;
+        while (actual instanceof listaCompacta || actual instanceof par) {
+            if (primero(actual).esSimbolo()) {
+                nombres.add((simbolo) primero(actual));
+            }
+            actual = resto(actual);
+        }
+        if (actual.esSimbolo() && actual != simbolo.NULO) {
+            nombres.add((simbolo) actual); // Parámetro rest
+        }
+        return nombres;
+    }
+
+    /**
+     * Comprueba si la expresión es una lista adecuada, la única forma de código
+     * que el analizador produce además de los átomos.
+     */
+    private static boolean esListaDeCodigo(ExpresionLisp expr) {
+        if (expr instanceof listaCompacta) {
+            return true;
+        }
+        ExpresionLisp actual = expr;
+        while (actual instanceof par) {
+            actual = resto(actual);
+        }
+        return actual != expr && actual == simbolo.NULO;
+    }
+
+    private static ExpresionLisp[] elementos(ExpresionLisp lista) {
+        ExpresionLisp[] elementos = new ExpresionLisp[longitud(lista)];
+        int i = 0;
+        for (ExpresionLisp actual = lista; actual != simbolo.NULO; actual = resto(actual)) {
+            elementos[i++] = primero(actual);
+        }
+        return elementos;
+    }
+
+    private static int longitud(ExpresionLisp lista) {
+        if (lista instanceof listaCompacta) {
+            return ((listaCompacta) lista).longitud();
+        }
+        int n = 0;
+        for (ExpresionLisp actual = lista; actual instanceof par; actual = resto(actual)) {
+            n++;
+        }
+        return n;
+    }
+
+    private static ExpresionLisp elemento(ExpresionLisp lista, int indice) {
+        ExpresionLisp actual = lista;
+        for (int i = 0; i < indice; i++) {
+            actual = resto(actual);
+        }
+        return primero(actual);
+    }
+
+    // Las listas de código son listas compactas o pares, que no fallan al recorrerse
+    private static ExpresionLisp primero(ExpresionLisp lista) {
+        return lista instanceof listaCompacta ? ((listaCompacta) lista).primero() : ((par) lista).primero();
+    }
+
+    private static ExpresionLisp resto(ExpresionLisp lista) {
+        return lista instanceof listaCompacta ? ((listaCompacta) lista).resto() : ((par) lista).resto();
+    }
+}
@@ -0,0 +1,252 @@
+package lisp;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Evaluador que guarda las continuaciones en una pila del montículo
+ * en lugar de anidar marcos de la pila de Java (máquina CEK).
+ * La recursión no terminal solo está limitada por la memoria, y las
+ * llamadas en posición terminal no hacen crecer la pila.
+ */
+final class evaluadorPila {
+    private final Interprete interprete;
+    private final ArrayDeque<Marco> pila = new ArrayDeque<>();
+    private final presupuesto limites = presupuesto.actual();
+
+    // Estado de la máquina: la expresión en curso y su entorno,
+    // o el valor que se devuelve al marco superior
+    private ExpresionLisp control;
+    private contexto entorno;
+    private ExpresionLisp valor;
+    private boolean devolviendo;
+
+    evaluadorPila(Interprete interprete) {
+        this.interprete = interprete;
+    }
+
+    /**
+     * Evalúa la expresión en el contexto dado hasta vaciar la pila.
+     */
+    ExpresionLisp evaluar(ExpresionLisp expr, contexto ctx) throws ExcepcionLisp {
+        evaluarEn(expr, ctx);
+        while (true) {
+            if (!devolviendo) {
+                paso();
+            } else if (pila.isEmpty()) {
+                return valor;
+            } else {
+                pila.pop().continuar(valor);
+            }
+        }
+    }
+
+    private void evaluarEn(ExpresionLisp expr, contexto ctx) {
+        control = expr;
+        entorno = ctx;
+        devolviendo = false;
+    }
+
+    private void devolver(ExpresionLisp resultado) {
+        valor = resultado;
+        devolviendo = true;
+    }
+
+    /**
+     * Da un paso sobre la expresión de control: la resuelve directamente
+     * o apila un marco y pasa a evaluar una subexpresión.
+     */
+    private void paso() throws ExcepcionLisp {
+        ExpresionLisp expr = control;
+        contexto ctx = entorno;
+
+        // Evalúa átomos
+        if (expr.esAtomo()) {
+            if (expr.esSimbolo() && expr != simbolo.NULO && expr != simbolo.VERDADERO) {
+                devolver(ctx.obtener((simbolo) expr));
+            } else {
+                devolver(expr);
+            }
+            return;
+        }
+
+        if (limites != null) {
+            limites.cobrarPaso();
+            limites.verificarProfundidad(pila.size());
+        }
+
+        ExpresionLisp primero = expr.primero();
+        ExpresionLisp resto = expr.resto();
+
+        // Maneja formas especiales
+        if (primero.esSimbolo()) {
+            simbolo op = (simbolo) primero;
+
+            if (op == simbolo.CITAR) {
+                devolver(resto.primero());
+                return;
+            } else if (op == simbolo.ASIGNAR) {
+                pila.push(new MarcoAsignar((simbolo) resto.primero(), ctx));
+                evaluarEn(resto.resto().primero(), ctx);
+                return;
+            } else if (op == simbolo.DEFINIR_FUNCION) {
+                devolver(interprete.definirFuncion(resto, ctx));
+                return;
+            } else if (op == simbolo.CONDICIONAL) {
+                siguienteClausula(resto, ctx);
+                return;
+            } else if (op == simbolo.IMPRIMIR) {
+                pila.push(new MarcoImprimir());
+                evaluarEn(resto.primero(), ctx);
+                return;
+            } else if (op == simbolo.PARALELO) {
+                devolver(interprete.evaluarEnParalelo(resto, ctx));
+                return;
+            } else if (op == simbolo.FUTURO) {
+                devolver(futuro.enPiscina(() -> interprete.ejecutar(resto.primero(), ctx)));
+                return;
+            } else if (op == simbolo.FUTURO_BLOQUEANTE) {
+                devolver(futuro.enHiloVirtual(() -> interprete.ejecutar(resto.primero(), ctx)));
+                return;
+            } else if (op == simbolo.REPETIR || op == simbolo.MIENTRAS) {
+                new MarcoBucle(bucle.crear(op, resto, ctx)).avanzar();
+                return;
+            }
+        }
+
+        // Aplicación de función: primero se evalúa la función, luego cada argumento
+        pila.push(new MarcoAplicacion(resto, ctx));
+        evaluarEn(primero, ctx);
+    }
+
+    /**
+     * Evalúa la condición de la siguiente cláusula de un CONDICIONAL.
+     */
+    private void siguienteClausula(ExpresionLisp clausulas, contexto ctx) throws ExcepcionLisp {
+        if (clausulas == simbolo.NULO) {
+            devolver(simbolo.NULO);
+            return;
+        }
+        pila.push(new MarcoCondicional(clausulas, ctx));
+        evaluarEn(clausulas.primero().primero(), ctx);
+    }
+
+    /**
+     * Continuación pendiente en la pila.
+     */
+    private abstract static class Marco {
+        abstract void continuar(ExpresionLisp valor) throws ExcepcionLisp;
+    }
+
+    private final class MarcoAsignar extends Marco {
+        private final simbolo variable;
+        private final contexto ctx;
+
+        MarcoAsignar(simbolo variable, contexto ctx) {
+            this.variable = variable;
+            this.ctx = ctx;
+        }
+
+        @Override
+        void continuar(ExpresionLisp resultado) {
+            ctx.establecer(variable, resultado);
+            devolver(resultado);
+        }
+    }
+
+    private final class MarcoImprimir extends Marco {
+        @Override
+        void continuar(ExpresionLisp resultado) {
+            devolver(interprete.imprimirValor(resultado));
+        }
+    }
+
+    private final class MarcoCondicional extends Marco {
+        private final ExpresionLisp clausulas;
+        private final contexto ctx;
+
+        MarcoCondicional(ExpresionLisp clausulas, contexto ctx) {
+            this.clausulas = clausulas;
+            this.ctx = ctx;
+        }
+
+        @Override
+        void continuar(ExpresionLisp condicion) throws ExcepcionLisp {
+            if (condicion != simbolo.NULO) {
+                // La expresión de la cláusula está en posición terminal
+                evaluarEn(clausulas.primero().resto().primero(), ctx);
+            } else {
+                siguienteClausula(clausulas.resto(), ctx);
+            }
+        }
+    }
+
+    /**
+     * Bucle en curso: el mismo marco se vuelve a apilar para cada expresión.
+     */
+    private final class MarcoBucle extends Marco {
+        private final bucle bucle;
+
+        MarcoBucle(bucle bucle) {
+            this.bucle = bucle;
+        }
+
+        void avanzar() throws ExcepcionLisp {
+            ExpresionLisp siguiente = bucle.siguiente();
+            if (siguiente == null) {
+                devolver(bucle.resultado());
+            } else {
+                pila.push(this);
+                evaluarEn(siguiente, bucle.entorno());
+            }
+        }
+
+        @Override
+        void continuar(ExpresionLisp resultado) throws ExcepcionLisp {
+            bucle.recibir(resultado);
+            avanzar();
+        }
+    }
+
+    private final class MarcoAplicacion extends Marco {
+        private ExpresionLisp pendientes;
+        private final contexto ctx;
+        private ExpresionLisp funcion;
+        private final List<ExpresionLisp> args = new ArrayList<>();
+
+        MarcoAplicacion(ExpresionLisp pendientes, contexto ctx) {
+            this.pendientes = pendientes;
+            this.ctx = ctx;
+        }
+
+        @Override
+        void continuar(ExpresionLisp resultado) throws ExcepcionLisp {
+            if (funcion == null) {
+                funcion = resultado;
+            } else {
+                args.add(resultado);
+            }
+
+            if (pendientes != simbolo.NULO) {
+                // Reutiliza este marco para el siguiente argumento
+                ExpresionLisp siguiente = pendientes.primero();
+                pendientes = pendientes.resto();
+                pila.push(this);
+                evaluarEn(siguiente, ctx);
+                return;
+            }
+            if (limites != null) {
+                // La lista de argumentos también ocupa celdas
+                limites.cobrarCeldas(args.size());
+            }
+            if (funcion instanceof Interprete.Funcion) {
+                // Llamada en posición terminal: el cuerpo reemplaza a este marco
+                Interprete.Funcion func = (Interprete.Funcion) funcion;
+                evaluarEn(func.cuerpo(), func.enlazar(args));
+            } else {
+                devolver(interprete.aplicar(funcion, args));
+            }
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package lisp;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Formato binario de las formas analizadas de un archivo fuente (fasl),
+ * con una caché en disco indexada por el hash SHA-256 del contenido.
+ * Volver a cargar un archivo sin cambios evita el análisis carácter a carácter.
+ *
+ * Formato: la cabecera, la tabla de símbolos y las formas en notación postfija.
+ * Los números y los índices de símbolo son varint; una lista se escribe como
+ * sus elementos seguidos de su etiqueta y su longitud, de modo que se
+ * reconstruye con una pila de operandos y sin recursión.
+ */
+final class fasl {
+    private static final int MAGIA = 0x4641534C; // "FASL"
+    private static final int VERSION = 1;
+
+    // Etiquetas de forma
+    private static final int NUMERO = 0;
+    private static final int SIMBOLO = 1;
+    private static final int LISTA = 2;
+    private static final int PUNTEADA = 3;
+    private static final int CADENA = 4;
+
+    // Directorio de la caché, configurable con -Dlisp.cache=ruta
+    private static final Path CACHE = Paths.get(System.getProperty("lisp.cache",
+        Paths.get(System.getProperty("user.home"), ".cache", "lisp").toString()));
+
+    private fasl() {
+    }
+
+    /**
+     * Obtiene las formas del archivo, de la caché si su contenido ya se compiló
+     * o analizándolo y guardándolo en la caché si no.
+     *
+     * @throws ExcepcionLisp si el archivo no se puede leer o tiene errores de sintaxis
+     */
+    static List<ExpresionLisp> formas(Path ruta) throws ExcepcionLisp {
+        byte[] contenido;
+        try {
+            contenido = Files.readAllBytes(ruta);
+        } catch (IOException e) {
+            throw new ExcepcionLisp("No se puede leer " + ruta + ": " + e.getMessage());
+        }
+
+        Path compilado = CACHE.resolve(hash(contenido) + ".fasl");
+        if (Files.isRegularFile(compilado)) {
+            try {
+                List<ExpresionLisp> formas = leer(ByteBuffer.wrap(Files.readAllBytes(compilado)));
+                if (formas != null) {
+                    return formas;
+                }
+            } catch (IOException | RuntimeException e) {
+                // Caché ilegible o corrupta: se vuelve a compilar
+            }
+        }
+
+        String fuente = new String(contenido, StandardCharsets.UTF_8);
+        List<ExpresionLisp> formas = new analizador(new StringReader(fuente)).analizarTodas();
+        try {
+            guardar(formas, compilado);
+        } catch (IOException e) {
+            // La caché es solo una optimización; sin ella el archivo se carga igual
+        }
+        return formas;
+    }
+
+    /**
+     * Escribe las formas en el archivo de forma atómica, para que otro proceso
+     * nunca lea un fasl a medio escribir.
+     */
+    private static void guardar(List<ExpresionLisp> formas, Path destino) throws IOException {
+        Escritor escritor = new Escritor();
+        for (ExpresionLisp forma : formas) {
+            escritor.escribir(forma);
+        }
+
+        ByteArrayOutputStream salida = new ByteArrayOutputStream();
+        imagen.escribirEntero(salida, MAGIA);
+        imagen.escribirVarint(salida, VERSION);
+        imagen.escribirVarint(salida, escritor.simbolos.size());
+        for (simbolo s : escritor.simbolos) {
+            byte[] nombre = s.obtenerNombre().getBytes(StandardCharsets.UTF_8);
+            imagen.escribirVarint(salida, nombre.length);
+            salida.write(nombre, 0, nombre.length);
+        }
+        imagen.escribirVarint(salida, formas.size());
+        escritor.formas.writeTo(salida);
+
+        Files.createDirectories(destino.getParent());
+        Path temporal = Files.createTempFile(destino.getParent(), "fasl", ".tmp");
+        try {
+            Files.write(temporal, salida.toByteArray());
+            Files.move(temporal, destino, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temporal);
+        }
+    }
+
+    /**
+     * Decodifica las formas de un fasl.
+     *
+     * @return Las formas, o null si el archivo es de otro formato o versión
+     */
+    private static List<ExpresionLisp> leer(ByteBuffer datos) {
+        if (datos.getInt() != MAGIA || imagen.leerVarint(datos) != VERSION) {
+            return null;
+        }
+
+        simbolo[] simbolos = new simbolo[(int) imagen.leerVarint(datos)];
+        for (int i = 0; i < simbolos.length; i++) {
+            byte[] nombre = new byte[(int) imagen.leerVarint(datos)];
+            datos.get(nombre);
+            simbolos[i] = simbolo.internamente(new String(nombre, StandardCharsets.UTF_8));
+        }
+
+        int cantidad = (int) imagen.leerVarint(datos);
+        List<ExpresionLisp> pila = new ArrayList<>();
+        while (datos.hasRemaining()) {
+            int etiqueta = datos.get();
+            switch (etiqueta) {
+                case NUMERO:
+                    pila.add(numero.obtenerValor(imagen.dezigzag(imagen.leerVarint(datos))));
+                    break;
+                case SIMBOLO:
+                    pila.add(simbolos[(int) imagen.leerVarint(datos)]);
+                    break;
+                case LISTA: {
+                    int n = (int) imagen.leerVarint(datos);
+                    List<ExpresionLisp> elementos = pila.subList(pila.size() - n, pila.size());
+                    ExpresionLisp lista = listaCompacta.desdeLista(elementos);
+                    elementos.clear();
+                    pila.add(lista);
+                    break;
+                }
+                case CADENA: {
+                    byte[] texto = new byte[(int) imagen.leerVarint(datos)];
+                    datos.get(texto);
+                    pila.add(new cadena(new String(texto, StandardCharsets.UTF_8)));
+                    break;
+                }
+                case PUNTEADA: {
+                    int n = (int) imagen.leerVarint(datos);
+                    ExpresionLisp resto = pila.remove(pila.size() - 1);
+                    for (int i = 0; i < n; i++) {
+                        resto = new par(pila.remove(pila.size() - 1), resto);
+                    }
+                    pila.add(resto);
+                    break;
+                }
+                default:
+                    throw new IllegalStateException("Etiqueta de fasl desconocida: " + etiqueta);
+            }
+        }
+        if (pila.size() != cantidad) {
+            throw new IllegalStateException("Fasl truncado");
+        }
+        return pila;
+    }
+
+    /**
+     * Codifica formas en notación postfija, asignando índices a los símbolos
+     * en el orden en que aparecen.
+     */
+    private static final class Escritor {
+        final List<simbolo> simbolos = new ArrayList<>();
+        final Map<simbolo, Integer> indices = new HashMap<>();
+        final ByteArrayOutputStream formas = new ByteArrayOutputStream();
+
+        void escribir(ExpresionLisp forma) {
+            if (forma.esNumero()) {
+                formas.write(NUMERO);
+                imagen.escribirVarint(formas, imagen.zigzag(((numero) forma).obtenerValor()));
+            } else if (forma.esSimbolo()) {
+                Integer indice = indices.get(forma);
+                if (indice == null) {
+                    indice = simbolos.size();
+                    simbolos.add((simbolo) forma);
+                    indices.put((simbolo) forma, indice);
+                }
+                formas.write(SIMBOLO);
+                imagen.escribirVarint(formas, indice);
+            } else if (forma instanceof cadena) {
+                byte[] texto = ((cadena) forma).obtenerTexto().getBytes(StandardCharsets.UTF_8);
+                formas.write(CADENA);
+                imagen.escribirVarint(formas, texto.length);
+                formas.write(texto, 0, texto.length);
+            } else if (forma instanceof listaCompacta) {
+                listaCompacta lista = (listaCompacta) forma;
+                ExpresionLisp[] elementos = lista.elementos();
+                for (int i = lista.desde(); i < elementos.length; i++) {
+                    escribir(elementos[i]);
+                }
+                formas.write(LISTA);
+                imagen.escribirVarint(formas, lista.longitud());
+            } else {
+                // Lista punteada: el analizador la construye con pares
+                int n = 0;
+                ExpresionLisp actual = forma;
+                while (actual instanceof par) {
+                    escribir(((par) actual).primero());
+                    actual = ((par) actual).resto();
+                    n++;
+                }
+                escribir(actual);
+                formas.write(PUNTEADA);
+                imagen.escribirVarint(formas, n);
+            }
+        }
+    }
+
+    private static String hash(byte[] contenido) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(contenido));
+        } catch (NoSuchAlgorithmException e) {
+            // Toda implementación de Java debe incluir SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+}
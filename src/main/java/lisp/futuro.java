@@ -0,0 +1,136 @@
+package lisp;
+
+import java.io.PrintStream;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Representa el resultado de una evaluación asíncrona en LISP.
+ * Las tareas de cálculo se ejecutan en una piscina con robo de trabajo;
+ * las que bloquean en E/S se ejecutan en hilos virtuales.
+ */
+public class futuro extends atomo {
+    static final ForkJoinPool PISCINA = ForkJoinPool.commonPool();
+    private static final ExecutorService HILOS_VIRTUALES = Executors.newVirtualThreadPerTaskExecutor();
+
+    /**
+     * Cálculo diferido que puede fallar con una excepción LISP.
+     */
+    @FunctionalInterface
+    public interface Calculo {
+        ExpresionLisp calcular() throws ExcepcionLisp;
+    }
+
+    private final Future<ExpresionLisp> tarea;
+
+    private futuro(Future<ExpresionLisp> tarea) {
+        this.tarea = tarea;
+    }
+
+    /**
+     * Lanza el cálculo en la piscina con robo de trabajo.
+     * Si se llama desde un hilo de la piscina, la tarea se encola localmente
+     * para que otros hilos puedan robarla.
+     */
+    public static futuro enPiscina(Calculo calculo) {
+        ForkJoinTask<ExpresionLisp> tarea = new TareaLisp(conPresupuestoActual(calculo));
+        if (ForkJoinTask.inForkJoinPool()) {
+            tarea.fork();
+        } else {
+            PISCINA.execute(tarea);
+        }
+        return new futuro(tarea);
+    }
+
+    /**
+     * Lanza el cálculo en un hilo virtual propio.
+     * Apropiado para trabajo que bloquea en E/S.
+     */
+    public static futuro enHiloVirtual(Calculo calculo) {
+        Calculo heredado = conPresupuestoActual(calculo);
+        return new futuro(HILOS_VIRTUALES.submit(() -> {
+            try {
+                return heredado.calcular();
+            } catch (ExcepcionLisp e) {
+                throw new CompletionException(e);
+            }
+        }));
+    }
+
+    /**
+     * Hace que el cálculo se evalúe con el presupuesto activo en el hilo que lo crea.
+     */
+    static Calculo conPresupuestoActual(Calculo calculo) {
+        presupuesto limites = presupuesto.actual();
+        if (limites == null) {
+            return calculo;
+        }
+        return () -> limites.ejecutar(calculo);
+    }
+
+    /**
+     * Espera a que termine el cálculo y devuelve su resultado.
+     *
+     * @throws ExcepcionLisp si el cálculo falló o la espera fue interrumpida
+     */
+    public ExpresionLisp esperar() throws ExcepcionLisp {
+        try {
+            if (tarea instanceof ForkJoinTask<ExpresionLisp> tareaPiscina) {
+                // join() ayuda a ejecutar otras tareas mientras espera
+                return tareaPiscina.join();
+            }
+            return tarea.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ExcepcionLisp("Espera interrumpida");
+        } catch (ExecutionException | RuntimeException e) {
+            throw desenvolver(e);
+        }
+    }
+
+    /**
+     * Extrae la excepción LISP original de una excepción de concurrencia.
+     */
+    static ExcepcionLisp desenvolver(Throwable error) {
+        for (Throwable causa = error; causa != null; causa = causa.getCause()) {
+            if (causa instanceof ExcepcionLisp) {
+                return (ExcepcionLisp) causa;
+            }
+        }
+        return new ExcepcionLisp("Error en evaluación concurrente: " + error);
+    }
+
+    @Override
+    public void imprimir(PrintStream salida) {
+        salida.print(tarea.isDone() ? "#<FUTURO TERMINADO>" : "#<FUTURO>");
+    }
+
+    /**
+     * Tarea de la piscina que envuelve un cálculo LISP.
+     */
+    private static class TareaLisp extends RecursiveTask<ExpresionLisp> {
+        private static final long serialVersionUID = 1L;
+
+        // Las tareas nunca se serializan; solo viven en la piscina
+        private final transient Calculo calculo;
+
+        TareaLisp(Calculo calculo) {
+            this.calculo = calculo;
+        }
+
+        @Override
+        protected ExpresionLisp compute() {
+            try {
+                return calculo.calcular();
+            } catch (ExcepcionLisp e) {
+                throw new CompletionException(e);
+            }
+        }
+    }
+}
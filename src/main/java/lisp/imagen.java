@@ -0,0 +1,445 @@
+package lisp;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Guarda y carga imágenes binarias de un contexto, para arrancar sin volver
+ * a analizar ni evaluar las bibliotecas.
+ *
+ * Formato: la cabecera, la tabla de registros y la sección de enlaces.
+ * Cada objeto alcanzable se escribe una sola vez, así que la estructura
+ * compartida se conserva; las referencias son índices de registro en varint.
+ * Las listas compactas guardan su arreglo una vez y cada vista como
+ * (arreglo, posición); las vistas de la misma posición comparten registro.
+ * Los registros se escriben en postorden, de modo que al cargar cada uno solo
+ * refiere a registros anteriores. Un contexto guarda solo su padre; sus enlaces
+ * van en la sección final, porque pueden referir a funciones que lo cierran.
+ * El contexto raíz es siempre el registro 0 y se carga sobre el contexto global
+ * del intérprete de destino.
+ */
+final class imagen {
+    private static final int MAGIA = 0x4C495350; // "LISP"
+    private static final int VERSION = 1;
+
+    // Etiquetas de registro
+    private static final int NUMERO = 0;
+    private static final int SIMBOLO = 1;
+    private static final int PAR = 2;
+    private static final int ARREGLO = 3;
+    private static final int LISTA_COMPACTA = 4;
+    private static final int VECTOR = 5;
+    private static final int FUNCION = 6;
+    private static final int CONTEXTO = 7;
+    private static final int PLAN_CIERRE = 8;
+    // Registro plano de una función convertida (ver planCierre)
+    private static final int REGISTRO = 9;
+    private static final int CADENA = 10;
+
+    // Referencia al padre de un contexto raíz
+    private static final int SIN_PADRE = 0;
+
+    private imagen() {
+    }
+
+    /**
+     * Escribe la imagen del contexto dado y de todo lo que alcanza.
+     *
+     * @throws ExcepcionLisp si algún valor alcanzable no se puede guardar
+     */
+    static void guardar(contexto raiz, Path ruta) throws ExcepcionLisp, IOException {
+        if (raiz.padre() != null) {
+            throw new ExcepcionLisp("Solo se puede guardar la imagen de un contexto raíz");
+        }
+        Escritor escritor = new Escritor();
+        escritor.registrar(raiz);
+        // Los enlaces pueden alcanzar contextos nuevos (cierres locales),
+        // cuyos enlaces a su vez hay que registrar
+        for (int i = 0; i < escritor.contextos.size(); i++) {
+            for (Map.Entry<simbolo, ExpresionLisp> enlace : escritor.enlaces.get(i).entrySet()) {
+                escritor.registrar(enlace.getKey());
+                escritor.registrar(enlace.getValue());
+            }
+        }
+
+        try (OutputStream salida = new BufferedOutputStream(Files.newOutputStream(ruta))) {
+            ByteArrayOutputStream cabecera = new ByteArrayOutputStream();
+            escribirEntero(cabecera, MAGIA);
+            escribirVarint(cabecera, VERSION);
+            escribirVarint(cabecera, escritor.cantidad);
+            cabecera.writeTo(salida);
+            escritor.registros.writeTo(salida);
+
+            ByteArrayOutputStream seccion = new ByteArrayOutputStream();
+            escribirVarint(seccion, escritor.contextos.size());
+            for (int i = 0; i < escritor.contextos.size(); i++) {
+                Map<simbolo, ExpresionLisp> enlaces = escritor.enlaces.get(i);
+                escribirVarint(seccion, escritor.ids.get(escritor.contextos.get(i)));
+                escribirVarint(seccion, enlaces.size());
+                for (Map.Entry<simbolo, ExpresionLisp> enlace : enlaces.entrySet()) {
+                    escribirVarint(seccion, escritor.ids.get(enlace.getKey()));
+                    escribirVarint(seccion, escritor.ids.get(enlace.getValue()));
+                }
+            }
+            seccion.writeTo(salida);
+        }
+    }
+
+    /**
+     * Carga la imagen sobre el contexto global dado. Los enlaces de la imagen
+     * reemplazan a los que ya existan con el mismo nombre.
+     *
+     * @throws ExcepcionLisp si el archivo no es una imagen válida
+     */
+    static void cargar(Path ruta, contexto global) throws ExcepcionLisp, IOException {
+        MappedByteBuffer datos;
+        try (FileChannel canal = FileChannel.open(ruta, StandardOpenOption.READ)) {
+            datos = canal.map(FileChannel.MapMode.READ_ONLY, 0, canal.size());
+        }
+        try {
+            new Lector(datos, global).leer();
+        } catch (RuntimeException e) {
+            // Índices fuera de rango, tipos inesperados o un archivo truncado
+            throw new ExcepcionLisp("Imagen corrupta: " + ruta + " (" + e + ")");
+        }
+    }
+
+    /**
+     * Recorre el grafo de objetos y escribe cada registro después de sus hijos.
+     */
+    private static final class Escritor {
+        final Map<Object, Integer> ids = new IdentityHashMap<>();
+        // Registro de cada vista de lista compacta, por arreglo y posición;
+        // resto() crea vistas nuevas, que deben compartir registro
+        final Map<ExpresionLisp[], Map<Integer, Integer>> vistas = new IdentityHashMap<>();
+        int cantidad;
+        final ByteArrayOutputStream registros = new ByteArrayOutputStream();
+        final List<contexto> contextos = new ArrayList<>();
+        // Copia de los enlaces de cada contexto, tomada una sola vez
+        final List<Map<simbolo, ExpresionLisp>> enlaces = new ArrayList<>();
+
+        /**
+         * Registra el objeto y todo lo que alcanza, sin recursión para que
+         * las listas largas no agoten la pila de Java.
+         */
+        void registrar(Object raiz) throws ExcepcionLisp {
+            ArrayDeque<Object> pendientes = new ArrayDeque<>();
+            pendientes.push(raiz);
+            List<Object> hijos = new ArrayList<>();
+            while (!pendientes.isEmpty()) {
+                Object objeto = pendientes.peek();
+                if (ids.containsKey(objeto) || registrarVistaConocida(objeto)) {
+                    pendientes.pop();
+                    continue;
+                }
+                hijos.clear();
+                agregarHijos(objeto, hijos);
+                boolean listo = true;
+                for (Object hijo : hijos) {
+                    if (!ids.containsKey(hijo)) {
+                        pendientes.push(hijo);
+                        listo = false;
+                    }
+                }
+                if (listo) {
+                    pendientes.pop();
+                    escribir(objeto);
+                }
+            }
+        }
+
+        /**
+         * Si el objeto es una vista de una posición ya registrada, la
+         * enlaza a ese registro en lugar de escribir uno nuevo.
+         */
+        private boolean registrarVistaConocida(Object objeto) {
+            if (!(objeto instanceof listaCompacta lista)) {
+                return false;
+            }
+            Map<Integer, Integer> porPosicion = vistas.get(lista.elementos());
+            Integer id = porPosicion == null ? null : porPosicion.get(lista.desde());
+            if (id == null) {
+                return false;
+            }
+            ids.put(objeto, id);
+            return true;
+        }
+
+        private void agregarHijos(Object objeto, List<Object> hijos) throws ExcepcionLisp {
+            if (objeto instanceof par) {
+                par celda = (par) objeto;
+                hijos.add(celda.resto());
+                hijos.add(celda.primero());
+            } else if (objeto instanceof listaCompacta) {
+                hijos.add(((listaCompacta) objeto).elementos());
+            } else if (objeto instanceof ExpresionLisp[]) {
+                ExpresionLisp[] arreglo = (ExpresionLisp[]) objeto;
+                for (int i = arreglo.length - 1; i >= 0; i--) {
+                    hijos.add(arreglo[i]);
+                }
+            } else if (objeto instanceof Interprete.Funcion) {
+                Interprete.Funcion func = (Interprete.Funcion) objeto;
+                hijos.add(func.parametros());
+                hijos.add(func.cuerpo());
+                hijos.add(func.cierreLexico());
+            } else if (objeto instanceof contexto) {
+                contexto padre = ((contexto) objeto).padre();
+                if (padre != null) {
+                    hijos.add(padre);
+                }
+            } else if (objeto instanceof planCierre) {
+                simbolo[] capturadas = ((planCierre) objeto).capturadas();
+                if (capturadas != null) {
+                    for (int i = capturadas.length - 1; i >= 0; i--) {
+                        hijos.add(capturadas[i]);
+                    }
+                }
+            } else if (!(objeto instanceof numero || objeto instanceof simbolo || objeto instanceof vector
+                         || objeto instanceof cadena)) {
+                throw new ExcepcionLisp("No se puede guardar en una imagen: " + objeto);
+            }
+        }
+
+        private void escribir(Object objeto) {
+            ByteArrayOutputStream salida = registros;
+            if (objeto instanceof numero) {
+                salida.write(NUMERO);
+                escribirVarint(salida, zigzag(((numero) objeto).obtenerValor()));
+            } else if (objeto instanceof simbolo) {
+                salida.write(SIMBOLO);
+                byte[] nombre = ((simbolo) objeto).obtenerNombre().getBytes(StandardCharsets.UTF_8);
+                escribirVarint(salida, nombre.length);
+                salida.write(nombre, 0, nombre.length);
+            } else if (objeto instanceof cadena) {
+                salida.write(CADENA);
+                byte[] texto = ((cadena) objeto).obtenerTexto().getBytes(StandardCharsets.UTF_8);
+                escribirVarint(salida, texto.length);
+                salida.write(texto, 0, texto.length);
+            } else if (objeto instanceof par) {
+                par celda = (par) objeto;
+                salida.write(PAR);
+                escribirVarint(salida, ids.get(celda.primero()));
+                escribirVarint(salida, ids.get(celda.resto()));
+            } else if (objeto instanceof ExpresionLisp[]) {
+                ExpresionLisp[] arreglo = (ExpresionLisp[]) objeto;
+                salida.write(ARREGLO);
+                escribirVarint(salida, arreglo.length);
+                for (ExpresionLisp elemento : arreglo) {
+                    escribirVarint(salida, ids.get(elemento));
+                }
+            } else if (objeto instanceof listaCompacta) {
+                listaCompacta lista = (listaCompacta) objeto;
+                salida.write(LISTA_COMPACTA);
+                escribirVarint(salida, ids.get(lista.elementos()));
+                escribirVarint(salida, lista.desde());
+                vistas.computeIfAbsent(lista.elementos(), arreglo -> new HashMap<>()).put(lista.desde(), cantidad);
+            } else if (objeto instanceof vector) {
+                long[] datos = ((vector) objeto).datos();
+                salida.write(VECTOR);
+                escribirVarint(salida, datos.length);
+                for (long valor : datos) {
+                    escribirVarint(salida, zigzag(valor));
+                }
+            } else if (objeto instanceof Interprete.Funcion) {
+                Interprete.Funcion func = (Interprete.Funcion) objeto;
+                salida.write(FUNCION);
+                escribirVarint(salida, ids.get(func.parametros()));
+                escribirVarint(salida, ids.get(func.cuerpo()));
+                escribirVarint(salida, ids.get(func.cierreLexico()));
+                salida.write(func.esPura() ? 1 : 0);
+            } else if (objeto instanceof planCierre) {
+                planCierre plan = (planCierre) objeto;
+                salida.write(PLAN_CIERRE);
+                simbolo[] capturadas = plan.capturadas();
+                if (capturadas == null) {
+                    // Cadena completa
+                    escribirVarint(salida, 0);
+                } else {
+                    escribirVarint(salida, capturadas.length + 1);
+                    for (simbolo variable : capturadas) {
+                        escribirVarint(salida, ids.get(variable));
+                    }
+                    escribirVarint(salida, plan.niveles());
+                    salida.write(plan.autorreferencia() ? 1 : 0);
+                }
+            } else {
+                contexto ctx = (contexto) objeto;
+                salida.write(planCierre.esRegistro(ctx) ? REGISTRO : CONTEXTO);
+                // El padre se guarda desplazado en uno para reservar el 0
+                escribirVarint(salida, ctx.padre() == null ? SIN_PADRE : ids.get(ctx.padre()) + 1);
+                contextos.add(ctx);
+                enlaces.add(Map.copyOf(ctx.enlaces()));
+            }
+            ids.put(objeto, cantidad++);
+        }
+    }
+
+    /**
+     * Reconstruye los registros en orden, en una sola pasada sobre el archivo mapeado.
+     */
+    private static final class Lector {
+        private final MappedByteBuffer datos;
+        private final contexto global;
+        private Object[] objetos;
+
+        Lector(MappedByteBuffer datos, contexto global) {
+            this.datos = datos;
+            this.global = global;
+        }
+
+        void leer() throws ExcepcionLisp {
+            if (datos.getInt() != MAGIA) {
+                throw new ExcepcionLisp("El archivo no es una imagen LISP");
+            }
+            int version = (int) leerVarint();
+            if (version != VERSION) {
+                throw new ExcepcionLisp("Versión de imagen no soportada: " + version);
+            }
+
+            objetos = new Object[(int) leerVarint()];
+            for (int i = 0; i < objetos.length; i++) {
+                objetos[i] = leerRegistro(i);
+            }
+
+            long cantidadContextos = leerVarint();
+            for (long i = 0; i < cantidadContextos; i++) {
+                contexto ctx = (contexto) objetos[(int) leerVarint()];
+                long cantidad = leerVarint();
+                for (long j = 0; j < cantidad; j++) {
+                    simbolo nombre = (simbolo) referencia();
+                    ctx.establecer(nombre, referencia());
+                }
+            }
+        }
+
+        private Object leerRegistro(int indice) throws ExcepcionLisp {
+            int etiqueta = datos.get();
+            switch (etiqueta) {
+                case NUMERO:
+                    return numero.obtenerValor(dezigzag(leerVarint()));
+                case SIMBOLO: {
+                    byte[] nombre = new byte[(int) leerVarint()];
+                    datos.get(nombre);
+                    return simbolo.internamente(new String(nombre, StandardCharsets.UTF_8));
+                }
+                case CADENA: {
+                    byte[] texto = new byte[(int) leerVarint()];
+                    datos.get(texto);
+                    return new cadena(new String(texto, StandardCharsets.UTF_8));
+                }
+                case PAR: {
+                    ExpresionLisp primero = referencia();
+                    return new par(primero, referencia());
+                }
+                case ARREGLO: {
+                    ExpresionLisp[] arreglo = new ExpresionLisp[(int) leerVarint()];
+                    for (int i = 0; i < arreglo.length; i++) {
+                        arreglo[i] = referencia();
+                    }
+                    return arreglo;
+                }
+                case LISTA_COMPACTA: {
+                    ExpresionLisp[] arreglo = (ExpresionLisp[]) objetos[(int) leerVarint()];
+                    return listaCompacta.vista(arreglo, (int) leerVarint());
+                }
+                case VECTOR: {
+                    long[] valores = new long[(int) leerVarint()];
+                    for (int i = 0; i < valores.length; i++) {
+                        valores[i] = dezigzag(leerVarint());
+                    }
+                    return new vector(valores);
+                }
+                case FUNCION: {
+                    ExpresionLisp parametros = referencia();
+                    ExpresionLisp cuerpo = referencia();
+                    contexto cierre = (contexto) objetos[(int) leerVarint()];
+                    return new Interprete.Funcion(parametros, cuerpo, cierre, datos.get() != 0);
+                }
+                case CONTEXTO: {
+                    long padre = leerVarint();
+                    if (padre == SIN_PADRE) {
+                        return indice == 0 ? global : new contexto();
+                    }
+                    return new contexto((contexto) objetos[(int) padre - 1]);
+                }
+                case REGISTRO:
+                    return planCierre.nuevoRegistro((contexto) objetos[(int) leerVarint() - 1]);
+                case PLAN_CIERRE: {
+                    int cantidad = (int) leerVarint();
+                    if (cantidad == 0) {
+                        return planCierre.CADENA_COMPLETA;
+                    }
+                    simbolo[] capturadas = new simbolo[cantidad - 1];
+                    for (int i = 0; i < capturadas.length; i++) {
+                        capturadas[i] = (simbolo) referencia();
+                    }
+                    int niveles = (int) leerVarint();
+                    return new planCierre(capturadas, niveles, datos.get() != 0);
+                }
+                default:
+                    throw new ExcepcionLisp("Registro de imagen desconocido: " + etiqueta);
+            }
+        }
+
+        private ExpresionLisp referencia() {
+            return (ExpresionLisp) objetos[(int) leerVarint()];
+        }
+
+        private long leerVarint() {
+            return imagen.leerVarint(datos);
+        }
+    }
+
+    // Codificación compartida con fasl
+
+    static void escribirEntero(ByteArrayOutputStream salida, int valor) {
+        salida.write(valor >>> 24);
+        salida.write(valor >>> 16);
+        salida.write(valor >>> 8);
+        salida.write(valor);
+    }
+
+    static void escribirVarint(ByteArrayOutputStream salida, long valor) {
+        while ((valor & ~0x7FL) != 0) {
+            salida.write((int) ((valor & 0x7F) | 0x80));
+            valor >>>= 7;
+        }
+        salida.write((int) valor);
+    }
+
+    static long leerVarint(ByteBuffer datos) {
+        long resultado = 0;
+        int desplazamiento = 0;
+        while (true) {
+            byte b = datos.get();
+            resultado |= (long) (b & 0x7F) << desplazamiento;
+            if (b >= 0) {
+                return resultado;
+            }
+            desplazamiento += 7;
+        }
+    }
+
+    static long zigzag(long valor) {
+        return (valor << 1) ^ (valor >> 63);
+    }
+
+    static long dezigzag(long valor) {
+        return (valor >>> 1) ^ -(valor & 1);
+    }
+}
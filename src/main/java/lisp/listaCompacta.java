@@ -0,0 +1,122 @@
+package lisp;
+
+import java.io.PrintStream;
+import java.util.List;
+
+/**
+ * Representa una lista LISP adecuada guardada en un arreglo (codificación CDR).
+ * El resto de una lista compacta es una vista del mismo arreglo a partir
+ * de la siguiente posición, de modo que la longitud y el acceso por índice
+ * son O(1) y no hace falta una celda por elemento.
+ *
+ * Las vistas no se guardan: resto() crea una nueva en cada llamada, y dos
+ * vistas del mismo arreglo en la misma posición son la misma lista (ver
+ * mismaVista).
+ */
+public class listaCompacta extends ExpresionLisp {
+    private final ExpresionLisp[] elementos;
+    private final int desde;
+
+    private listaCompacta(ExpresionLisp[] elementos, int desde) {
+        this.elementos = elementos;
+        this.desde = desde;
+    }
+
+    /**
+     * Crea una lista con los elementos dados. El arreglo pasa a ser de la
+     * lista y no debe modificarse después.
+     *
+     * @return La lista, o NULO si no hay elementos
+     */
+    public static ExpresionLisp crear(ExpresionLisp... elementos) {
+        if (elementos.length == 0) {
+            return simbolo.NULO;
+        }
+        return new listaCompacta(elementos, 0);
+    }
+
+    /**
+     * Crea una lista con los elementos de la lista Java dada.
+     *
+     * @return La lista, o NULO si no hay elementos
+     */
+    public static ExpresionLisp desdeLista(List<ExpresionLisp> elementos) {
+        return crear(elementos.toArray(new ExpresionLisp[0]));
+    }
+
+    /**
+     * Crea una vista del arreglo dado a partir de la posición dada.
+     */
+    static listaCompacta vista(ExpresionLisp[] elementos, int desde) {
+        if (desde < 0 || desde >= elementos.length) {
+            throw new IllegalArgumentException("Posición fuera del arreglo: " + desde);
+        }
+        return new listaCompacta(elementos, desde);
+    }
+
+    @Override
+    public ExpresionLisp primero() {
+        return elementos[desde];
+    }
+
+    @Override
+    public ExpresionLisp resto() {
+        if (desde + 1 == elementos.length) {
+            return simbolo.NULO;
+        }
+        return new listaCompacta(elementos, desde + 1);
+    }
+
+    /**
+     * Comprueba si esta vista y la dada empiezan en la misma posición del
+     * mismo arreglo, es decir, si son la misma lista.
+     */
+    boolean mismaVista(listaCompacta otra) {
+        return elementos == otra.elementos && desde == otra.desde;
+    }
+
+    /**
+     * Retorna la longitud de esta lista.
+     */
+    public int longitud() {
+        return elementos.length - desde;
+    }
+
+    /**
+     * Obtiene el elemento en la posición dada.
+     *
+     * @throws ExcepcionLisp si la posición está fuera de rango
+     */
+    public ExpresionLisp obtener(long indice) throws ExcepcionLisp {
+        if (indice < 0 || indice >= longitud()) {
+            throw new ExcepcionLisp("Índice fuera de rango: " + indice);
+        }
+        return elementos[desde + (int) indice];
+    }
+
+    /**
+     * Obtiene el arreglo compartido por todas las vistas de esta lista.
+     */
+    ExpresionLisp[] elementos() {
+        return elementos;
+    }
+
+    /**
+     * Obtiene la posición del arreglo en que empieza esta vista.
+     */
+    int desde() {
+        return desde;
+    }
+
+    @Override
+    public void imprimir(PrintStream salida) {
+        salida.print("(");
+        for (int i = desde; i < elementos.length; i++) {
+            if (i > desde) {
+                salida.print(" ");
+            }
+            elementos[i].imprimir(salida);
+        }
+        salida.print(")");
+    }
+}
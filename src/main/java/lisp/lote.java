@@ -0,0 +1,208 @@
+package lisp;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Ejecución de scripts por lotes en tres etapas que se solapan: un hilo
+ * analiza formas por adelantado, el hilo que llama las evalúa en orden, y
+ * otro hilo escribe la salida. Las colas entre etapas son acotadas, así que
+ * un script grande no se carga entero en memoria.
+ *
+ * Para no pagar una entrega entre hilos por cada forma, las formas viajan en
+ * grupos y la salida en bloques de varios KB; lo pendiente se entrega antes
+ * cuando la etapa siguiente se quedaría sin trabajo. Las etapas usan hilos
+ * de plataforma: duran todo el script y bloquean en E/S de archivos.
+ */
+final class lote {
+    // Grupos de formas analizadas que pueden esperar a ser evaluados
+    private static final int GRUPOS_EN_COLA = 16;
+    private static final int FORMAS_POR_GRUPO = 64;
+    // Bloques de salida que pueden esperar a ser escritos
+    private static final int BLOQUES_EN_COLA = 16;
+    private static final int TAMANO_BLOQUE = 8192;
+
+    // Marca de fin en ambas colas
+    private static final Object FIN = new Object();
+
+    private lote() {
+    }
+
+    /**
+     * Evalúa todas las formas de la entrada en el contexto dado y escribe en la
+     * salida lo que imprima cada una. Se detiene en el primer error, que se
+     * escribe también en la salida.
+     *
+     * @return true si todas las formas se evaluaron sin error
+     */
+    static boolean ejecutar(contexto global, boolean pilaExplicita, Reader entrada, OutputStream destino)
+            throws IOException, InterruptedException {
+        BlockingQueue<Object> formas = new ArrayBlockingQueue<>(GRUPOS_EN_COLA);
+        BlockingQueue<Object> bloques = new ArrayBlockingQueue<>(BLOQUES_EN_COLA);
+
+        Thread lector = Thread.ofPlatform().daemon(true).name("lote-lector")
+            .start(() -> analizar(entrada, formas));
+        AtomicReference<IOException> errorEscritura = new AtomicReference<>();
+        Thread escritor = Thread.ofPlatform().daemon(true).name("lote-escritor")
+            .start(() -> escribir(bloques, destino, errorEscritura));
+
+        // Lo que imprime cada forma se acumula aquí y se pasa al escritor en un bloque
+        ByteArrayOutputStream bloque = new ByteArrayOutputStream();
+        PrintStream salida = new PrintStream(bloque, false, StandardCharsets.UTF_8);
+        Interprete interprete = new Interprete(global, salida);
+        interprete.usarPilaExplicita(pilaExplicita);
+
+        boolean exito = true;
+        try {
+            procesar:
+            while (true) {
+                Object grupo = formas.poll();
+                if (grupo == null) {
+                    // Antes de esperar al lector, entrega la salida pendiente
+                    entregar(salida, bloque, bloques);
+                    grupo = formas.take();
+                }
+                if (grupo == FIN) {
+                    break;
+                }
+                for (Object siguiente : (List<?>) grupo) {
+                    try {
+                        if (siguiente instanceof ExcepcionLisp) {
+                            throw (ExcepcionLisp) siguiente;
+                        }
+                        interprete.ejecutar((ExpresionLisp) siguiente, global);
+                    } catch (ExcepcionLisp e) {
+                        salida.println("Error: " + e.getMessage());
+                        exito = false;
+                    } catch (RuntimeException | StackOverflowError e) {
+                        salida.println("Error: " + e);
+                        exito = false;
+                    }
+                    if (bloque.size() >= TAMANO_BLOQUE) {
+                        entregar(salida, bloque, bloques);
+                    }
+                    if (!exito || errorEscritura.get() != null) {
+                        break procesar;
+                    }
+                }
+            }
+        } finally {
+            // Si se detuvo antes del final, el lector puede estar esperando en la cola
+            lector.interrupt();
+            // Lo impreso hasta aquí se escribe aunque la ejecución haya fallado
+            entregar(salida, bloque, bloques);
+            bloques.put(FIN);
+            escritor.join();
+        }
+        if (errorEscritura.get() != null) {
+            throw errorEscritura.get();
+        }
+        return exito;
+    }
+
+    /**
+     * Pasa al escritor lo que se haya impreso desde la última entrega.
+     * Toma el mismo cerrojo que IMPRIMIR, para que lo que imprima una tarea
+     * de FUTURO no se pierda entre la copia y el vaciado del bloque.
+     */
+    private static void entregar(PrintStream salida, ByteArrayOutputStream bloque, BlockingQueue<Object> bloques)
+            throws InterruptedException {
+        byte[] pendiente;
+        synchronized (salida) {
+            salida.flush();
+            if (bloque.size() == 0) {
+                return;
+            }
+            pendiente = bloque.toByteArray();
+            bloque.reset();
+        }
+        bloques.put(pendiente);
+    }
+
+    /**
+     * Etapa de análisis: pone en la cola grupos de formas, terminados por el
+     * error que detenga el análisis, y al final la marca de fin.
+     * Un grupo se entrega incompleto si el evaluador no tiene nada pendiente.
+     */
+    private static void analizar(Reader entrada, BlockingQueue<Object> formas) {
+        analizador analizador = new analizador(entrada);
+        List<Object> grupo = new ArrayList<>(FORMAS_POR_GRUPO);
+        boolean interrumpido = false;
+        try {
+            try {
+                ExpresionLisp forma;
+                while ((forma = analizador.analizar()) != null) {
+                    grupo.add(forma);
+                    if (grupo.size() == FORMAS_POR_GRUPO || formas.isEmpty()) {
+                        formas.put(grupo);
+                        grupo = new ArrayList<>(FORMAS_POR_GRUPO);
+                    }
+                }
+            } catch (ExcepcionLisp e) {
+                grupo.add(e);
+            } catch (InterruptedException e) {
+                throw e;
+            } catch (Throwable e) {
+                // Un fallo interno detiene el análisis como un error de sintaxis
+                grupo.add(new ExcepcionLisp(e.toString()));
+            }
+            if (!grupo.isEmpty()) {
+                formas.put(grupo);
+            }
+        } catch (InterruptedException e) {
+            // El evaluador ya no quiere más formas
+            interrumpido = true;
+        } finally {
+            // Sin la marca de fin, el evaluador esperaría para siempre
+            if (!interrumpido) {
+                ponerFin(formas);
+            }
+        }
+    }
+
+    private static void ponerFin(BlockingQueue<Object> formas) {
+        try {
+            formas.put(FIN);
+        } catch (InterruptedException e) {
+            // El evaluador ya no espera la marca
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Etapa de escritura: escribe cada bloque en orden hasta la marca de fin.
+     * Tras un error de escritura sigue vaciando la cola, para que el evaluador
+     * nunca se quede bloqueado esperando espacio.
+     */
+    private static void escribir(BlockingQueue<Object> bloques, OutputStream destino,
+                                 AtomicReference<IOException> error) {
+        try {
+            Object bloque;
+            while ((bloque = bloques.take()) != FIN) {
+                if (error.get() == null) {
+                    try {
+                        destino.write((byte[]) bloque);
+                    } catch (IOException e) {
+                        error.set(e);
+                    }
+                }
+            }
+            if (error.get() == null) {
+                destino.flush();
+            }
+        } catch (IOException e) {
+            error.set(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
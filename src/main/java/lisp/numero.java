@@ -1,14 +1,22 @@
 package lisp;
 
 import java.io.PrintStream;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.Map;
 
 /**
  * Representa un valor numérico en LISP.
  */
 public class numero extends atomo {
-    private static final Map<Long, numero> cacheNumeros = new ConcurrentHashMap<>();
+    // Solo se comparten los números pequeños; el resto se crea en cada uso,
+    // para que un bucle o un rango largo no deje vivos todos sus valores
+    private static final long MINIMO_CACHE = -128;
+    private static final long MAXIMO_CACHE = 1024;
+    private static final numero[] cacheNumeros = new numero[(int) (MAXIMO_CACHE - MINIMO_CACHE + 1)];
+
+    static {
+        for (int i = 0; i < cacheNumeros.length; i++) {
+            cacheNumeros[i] = new numero(MINIMO_CACHE + i);
+        }
+    }
     
     // Números comunes para caché
     public static final numero CERO = obtenerValor(0);
@@ -22,10 +30,15 @@ public class numero extends atomo {
     
     /**
      * Retorna una instancia de Numero con el valor dado.
-     * Almacena en caché números comúnmente usados para eficiencia.
+     * Los números entre -128 y 1024 se toman de la caché; los demás son
+     * instancias nuevas, así que dos números iguales pueden ser objetos
+     * distintos.
      */
     public static numero obtenerValor(long valor) {
-        return cacheNumeros.computeIfAbsent(valor, numero::new);
+        if (valor >= MINIMO_CACHE && valor <= MAXIMO_CACHE) {
+            return cacheNumeros[(int) (valor - MINIMO_CACHE)];
+        }
+        return new numero(valor);
     }
     
     /**
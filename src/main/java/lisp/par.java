@@ -56,11 +56,9 @@ public class par extends ExpresionLisp {
      * Retorna -1 si esta no es una lista adecuada.
      */
     public int longitud() {
-        if (!esLista()) return -1;
-        
         int longitud = 0;
         ExpresionLisp actual = this;
-        while (actual != simbolo.NULO) {
+        while (!(actual.esAtomo())) {
             longitud++;
             try {
                 actual = actual.resto();
@@ -68,34 +66,11 @@ public class par extends ExpresionLisp {
                 return -1;
             }
         }
-        return longitud;
+        return actual == simbolo.NULO ? longitud : -1;
     }
     
     @Override
     public void imprimir(PrintStream salida) {
-        salida.print("(");
-        
-        // Imprime el primer elemento
-        primero.imprimir(salida);
-        
-        // Imprime el resto de la lista
-        ExpresionLisp restoLista = resto;
-        while (!(restoLista.esAtomo()) && restoLista != simbolo.NULO) {
-            salida.print(" ");
-            try {
-                restoLista.primero().imprimir(salida);
-                restoLista = restoLista.resto();
-            } catch (ExcepcionLisp e) {
-                break;
-            }
-        }
-        
-        // Si el último resto no es NULO, imprímelo como un par punteado
-        if (restoLista != simbolo.NULO) {
-            salida.print(" . ");
-            restoLista.imprimir(salida);
-        }
-        
-        salida.print(")");
+        imprimirComoLista(salida);
     }
 }
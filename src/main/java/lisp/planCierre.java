@@ -0,0 +1,138 @@
+package lisp;
+
+import java.io.PrintStream;
+
+/**
+ * Plan de captura de una función anidada, calculado por conversionCierres
+ * y guardado como cuarto elemento de su forma DEFINIR_FUNCION.
+ *
+ * En lugar de cerrar sobre toda la cadena de contextos, la función cierra
+ * sobre un registro plano con solo sus variables capturadas, cuyo padre es
+ * el contexto de nivel superior. Así los marcos intermedios, y los datos a
+ * los que refieren, no quedan vivos mientras viva la función.
+ */
+public final class planCierre extends atomo {
+    /**
+     * Plan de las funciones que no se pueden convertir: cierran sobre toda la cadena.
+     */
+    static final planCierre CADENA_COMPLETA = new planCierre(null, 0, false);
+
+    private final simbolo[] capturadas;
+    private final int niveles;
+    private final boolean autorreferencia;
+
+    /**
+     * @param capturadas Variables que se copian al registro
+     * @param niveles Cantidad de funciones y bucles que contienen a esta
+     * @param autorreferencia Si la función se refiere a sí misma por su nombre
+     */
+    planCierre(simbolo[] capturadas, int niveles, boolean autorreferencia) {
+        this.capturadas = capturadas;
+        this.niveles = niveles;
+        this.autorreferencia = autorreferencia;
+    }
+
+    /**
+     * Construye el contexto sobre el que cierra la función definida en ctx.
+     * Con la cadena completa es el propio ctx; si no, un registro con los
+     * valores actuales de las variables capturadas.
+     */
+    contexto capturar(contexto ctx) {
+        if (capturadas == null) {
+            return ctx;
+        }
+        contexto superior = nivelSuperior(ctx);
+        if (superior == null) {
+            // La cadena no tiene la forma esperada; se conserva entera
+            return ctx;
+        }
+        contexto registro = new registro(superior);
+        for (simbolo variable : capturadas) {
+            try {
+                registro.establecer(variable, ctx.obtener(variable));
+            } catch (ExcepcionLisp e) {
+                // Sin enlace todavía; se buscará en el nivel superior, como antes
+            }
+        }
+        return registro;
+    }
+
+    /**
+     * Busca el contexto de nivel superior desde el marco de llamada de la
+     * función que contiene a esta. El padre de cada marco es el cierre de su
+     * función: un registro, cuyo padre es el nivel superior, o el marco de la
+     * función que la contiene, si esa función conservó la cadena completa.
+     * El padre del contexto de un bucle es el contexto en el que aparece.
+     */
+    private contexto nivelSuperior(contexto ctx) {
+        contexto actual = ctx;
+        for (int nivel = niveles; nivel > 0 && actual != null; nivel--) {
+            actual = actual.padre();
+            if (nivel == 1) {
+                return actual;
+            }
+            if (actual instanceof registro) {
+                return actual.padre();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Completa el registro con la propia función, si se refiere a sí misma.
+     */
+    void enlazarFuncion(contexto registro, simbolo nombre, ExpresionLisp funcion) {
+        if (autorreferencia) {
+            registro.establecer(nombre, funcion);
+        }
+    }
+
+    simbolo[] capturadas() {
+        return capturadas;
+    }
+
+    int niveles() {
+        return niveles;
+    }
+
+    boolean autorreferencia() {
+        return autorreferencia;
+    }
+
+    /**
+     * Crea un registro vacío cuyo padre es el contexto de nivel superior dado.
+     */
+    static contexto nuevoRegistro(contexto superior) {
+        return new registro(superior);
+    }
+
+    /**
+     * Comprueba si el contexto es el registro de una función convertida.
+     */
+    static boolean esRegistro(contexto ctx) {
+        return ctx instanceof registro;
+    }
+
+    /**
+     * Contexto plano con las variables capturadas de una función.
+     */
+    private static final class registro extends contexto {
+        registro(contexto superior) {
+            super(superior);
+        }
+    }
+
+    @Override
+    public void imprimir(PrintStream salida) {
+        if (capturadas == null) {
+            salida.print("#<CIERRE COMPLETO>");
+            return;
+        }
+        salida.print("#<CIERRE");
+        for (simbolo variable : capturadas) {
+            salida.print(" ");
+            variable.imprimir(salida);
+        }
+        salida.print(">");
+    }
+}
@@ -0,0 +1,273 @@
+package lisp;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Representa los límites de una evaluación LISP: pasos de evaluación,
+ * tiempo de reloj, celdas cons reservadas y profundidad de recursión.
+ * También sirve para cancelar la evaluación desde otro hilo.
+ * Un límite de 0 significa sin límite.
+ *
+ * El presupuesto activo se guarda por hilo; las tareas de PARALELO, FUTURO
+ * y MAPEAR lo heredan del hilo que las crea. Los pasos y las celdas se
+ * suman entre todos esos hilos; la profundidad se cuenta en cada hilo por
+ * separado, porque cada uno tiene su propia pila de llamadas.
+ *
+ * Cada hilo trabaja con su propia vista del presupuesto (la que devuelve
+ * actual()), que toma pasos y celdas de los contadores compartidos en lotes
+ * y los gasta sin sincronizarse; al terminar devuelve lo que no usó. Con
+ * varios hilos a la vez, lo reservado por los demás cuenta como gastado, así
+ * que el límite puede alcanzarse hasta un lote antes por hilo. Los lotes son
+ * pequeños cuando el límite es pequeño.
+ */
+public class presupuesto {
+    private static final ThreadLocal<presupuesto> ACTUAL = new ThreadLocal<>();
+
+    // Pasos y celdas que un hilo reserva de una vez como máximo; el reloj
+    // se consulta al reservar cada lote de pasos
+    private static final long LOTE = 1024;
+    // Con límites pequeños, cada lote es a lo sumo esta fracción del límite
+    private static final long LOTES_POR_LIMITE = 64;
+
+    // El presupuesto compartido, o this si este es el compartido
+    private final presupuesto raiz;
+
+    private final long maxPasos;
+    private final long nanosPlazo;
+    private long plazo;
+    private final boolean conPlazo;
+    private final long maxCeldas;
+    private final int maxProfundidad;
+    private final long lotePasos;
+    private final long loteCeldas;
+
+    // Compartidos con todas las vistas
+    private final AtomicLong pasos;
+    private final AtomicLong celdas;
+    private volatile boolean cancelado;
+
+    // Solo en las vistas: lo reservado y no usado, y la profundidad del hilo
+    private long pasosLibres;
+    private long celdasLibres;
+    private int profundidad;
+
+    /**
+     * Crea un presupuesto sin límites, que solo permite cancelar.
+     */
+    public presupuesto() {
+        this(0, 0, 0, 0);
+    }
+
+    /**
+     * Crea un presupuesto con los límites dados. El plazo empieza a contar ahora.
+     */
+    public presupuesto(long maxPasos, long maxMilisegundos, long maxCeldas, int maxProfundidad) {
+        this.raiz = this;
+        this.maxPasos = maxPasos > 0 ? maxPasos : Long.MAX_VALUE;
+        this.conPlazo = maxMilisegundos > 0;
+        this.nanosPlazo = maxMilisegundos * 1_000_000L;
+        this.plazo = System.nanoTime() + nanosPlazo;
+        this.maxCeldas = maxCeldas > 0 ? maxCeldas : Long.MAX_VALUE;
+        this.maxProfundidad = maxProfundidad > 0 ? maxProfundidad : Integer.MAX_VALUE;
+        this.lotePasos = tamanoLote(this.maxPasos);
+        this.loteCeldas = tamanoLote(this.maxCeldas);
+        this.pasos = new AtomicLong();
+        this.celdas = new AtomicLong();
+    }
+
+    /**
+     * Crea la vista de un hilo sobre el presupuesto compartido dado.
+     */
+    private presupuesto(presupuesto raiz) {
+        this.raiz = raiz;
+        this.maxPasos = raiz.maxPasos;
+        this.conPlazo = raiz.conPlazo;
+        this.nanosPlazo = raiz.nanosPlazo;
+        this.plazo = raiz.plazo;
+        this.maxCeldas = raiz.maxCeldas;
+        this.maxProfundidad = raiz.maxProfundidad;
+        this.lotePasos = raiz.lotePasos;
+        this.loteCeldas = raiz.loteCeldas;
+        this.pasos = raiz.pasos;
+        this.celdas = raiz.celdas;
+    }
+
+    private static long tamanoLote(long limite) {
+        return Math.max(1, Math.min(LOTE, limite / LOTES_POR_LIMITE));
+    }
+
+    /**
+     * Obtiene la vista del presupuesto activo en este hilo, o null si no hay
+     * ninguno. La vista solo debe usarse en este hilo; para pasar el
+     * presupuesto a otro, se llama a ejecutar() desde allí.
+     */
+    public static presupuesto actual() {
+        return ACTUAL.get();
+    }
+
+    /**
+     * Evalúa el cálculo con este presupuesto activo en el hilo actual.
+     */
+    public ExpresionLisp ejecutar(futuro.Calculo calculo) throws ExcepcionLisp {
+        presupuesto anterior = ACTUAL.get();
+        if (anterior != null && anterior.raiz == raiz) {
+            // El hilo ya trabaja con este presupuesto: conserva su vista y su profundidad
+            return calculo.calcular();
+        }
+        presupuesto vista = new presupuesto(raiz);
+        ACTUAL.set(vista);
+        try {
+            return calculo.calcular();
+        } finally {
+            vista.devolver();
+            if (anterior == null) {
+                ACTUAL.remove();
+            } else {
+                ACTUAL.set(anterior);
+            }
+        }
+    }
+
+    /**
+     * Vuelve a empezar el plazo y los contadores de pasos y celdas, para usar
+     * el mismo presupuesto en otra evaluación. Solo debe llamarse entre
+     * evaluaciones, cuando ningún hilo trabaja con él.
+     */
+    public void reiniciar() {
+        raiz.plazo = System.nanoTime() + nanosPlazo;
+        pasos.set(0);
+        celdas.set(0);
+    }
+
+    /**
+     * Pide que se aborte la evaluación. Es seguro llamarlo desde cualquier hilo;
+     * la evaluación falla con ExcepcionCancelada en su siguiente paso.
+     */
+    public void cancelar() {
+        raiz.cancelado = true;
+    }
+
+    /**
+     * Comprueba si se pidió cancelar la evaluación.
+     */
+    public boolean estaCancelado() {
+        return raiz.cancelado;
+    }
+
+    /**
+     * Cuenta un paso de evaluación y verifica la cancelación, los pasos y el plazo.
+     */
+    public void cobrarPaso() throws ExcepcionLisp {
+        if (raiz.cancelado) {
+            throw new ExcepcionCancelada();
+        }
+        if (--pasosLibres < 0) {
+            reservarPasos();
+        }
+    }
+
+    private void reservarPasos() throws ExcepcionLisp {
+        long hasta = pasos.addAndGet(lotePasos);
+        long desde = hasta - lotePasos;
+        if (desde >= maxPasos || hasta < 0) {
+            pasosLibres = 0;
+            throw new ExcepcionLimiteExcedido("Se superó el límite de " + maxPasos + " pasos");
+        }
+        // Lo que pase del límite no se puede usar
+        pasosLibres = Math.min(lotePasos, maxPasos - desde);
+        verificarPlazo();
+        // Este paso sale del lote recién reservado
+        pasosLibres--;
+    }
+
+    /**
+     * Cuenta de una vez los pasos de una operación masiva, como las de
+     * vectores, y verifica la cancelación, los pasos y el plazo.
+     */
+    public void cobrarPasos(long cantidad) throws ExcepcionLisp {
+        if (raiz.cancelado) {
+            throw new ExcepcionCancelada();
+        }
+        long cuenta = pasos.addAndGet(cantidad);
+        if (cuenta > maxPasos || cuenta < 0) {
+            throw new ExcepcionLimiteExcedido("Se superó el límite de " + maxPasos + " pasos");
+        }
+        verificarPlazo();
+    }
+
+    /**
+     * Verifica la cancelación y el plazo sin contar pasos, para las
+     * operaciones masivas que ya los cobraron y tardan en completarse.
+     */
+    public void verificar() throws ExcepcionLisp {
+        if (raiz.cancelado) {
+            throw new ExcepcionCancelada();
+        }
+        verificarPlazo();
+    }
+
+    private void verificarPlazo() throws ExcepcionLisp {
+        if (conPlazo && System.nanoTime() - plazo > 0) {
+            throw new ExcepcionLimiteExcedido("Se superó el límite de tiempo");
+        }
+    }
+
+    /**
+     * Cuenta celdas cons reservadas.
+     */
+    public void cobrarCeldas(long cantidad) throws ExcepcionLisp {
+        celdasLibres -= cantidad;
+        if (celdasLibres >= 0) {
+            return;
+        }
+        // Reserva lo que falta y un lote más
+        long faltan = -celdasLibres;
+        long hasta = celdas.addAndGet(faltan + loteCeldas);
+        long usadas = hasta - loteCeldas;
+        if (usadas > maxCeldas || hasta < 0) {
+            celdasLibres = 0;
+            throw new ExcepcionLimiteExcedido("Se superó el límite de " + maxCeldas + " celdas");
+        }
+        celdasLibres = Math.min(loteCeldas, maxCeldas - usadas);
+    }
+
+    /**
+     * Devuelve a los contadores compartidos lo que esta vista reservó y no usó.
+     */
+    private void devolver() {
+        if (pasosLibres > 0) {
+            pasos.addAndGet(-pasosLibres);
+            pasosLibres = 0;
+        }
+        if (celdasLibres > 0) {
+            celdas.addAndGet(-celdasLibres);
+            celdasLibres = 0;
+        }
+    }
+
+    /**
+     * Registra la entrada a una llamada de función en el hilo actual.
+     */
+    public void entrar() throws ExcepcionLisp {
+        if (++profundidad > maxProfundidad) {
+            profundidad--;
+            throw new ExcepcionLimiteExcedido("Se superó la profundidad máxima de " + maxProfundidad);
+        }
+    }
+
+    /**
+     * Registra la salida de una llamada de función en el hilo actual.
+     */
+    public void salir() {
+        profundidad--;
+    }
+
+    /**
+     * Verifica una profundidad medida externamente, como el tamaño de una pila explícita.
+     */
+    public void verificarProfundidad(int medida) throws ExcepcionLisp {
+        if (medida > maxProfundidad) {
+            throw new ExcepcionLimiteExcedido("Se superó la profundidad máxima de " + maxProfundidad);
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package lisp;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Reader;
+
+/**
+ * Representa una secuencia perezosa en LISP.
+ * Cada celda conoce su primer elemento; el resto se genera la primera vez
+ * que se pide y se memoriza. Las celdas ya recorridas pueden ser recolectadas
+ * si nadie conserva la cabeza, de modo que se pueden procesar entradas
+ * mayores que la memoria disponible.
+ */
+public class secuencia extends ExpresionLisp {
+
+    /**
+     * Produce los elementos de una secuencia, uno por llamada.
+     */
+    @FunctionalInterface
+    public interface Generador {
+        /**
+         * @return El siguiente elemento, o null si no quedan más
+         */
+        ExpresionLisp siguiente() throws ExcepcionLisp;
+    }
+
+    /**
+     * Transforma un elemento de una secuencia.
+     */
+    @FunctionalInterface
+    public interface Transformacion {
+        /**
+         * @return El elemento transformado, o null para omitirlo
+         */
+        ExpresionLisp transformar(ExpresionLisp elemento) throws ExcepcionLisp;
+    }
+
+    private final ExpresionLisp primero;
+    private Generador generador;
+    private ExpresionLisp resto;
+
+    private secuencia(ExpresionLisp primero, Generador generador) {
+        this.primero = primero;
+        this.generador = generador;
+    }
+
+    /**
+     * Crea una secuencia con los elementos del generador dado.
+     * Se genera el primer elemento para saber si la secuencia está vacía.
+     *
+     * @return La secuencia, o NULO si el generador no produce elementos
+     */
+    public static ExpresionLisp desde(Generador generador) throws ExcepcionLisp {
+        ExpresionLisp elemento = generador.siguiente();
+        if (elemento == null) {
+            return simbolo.NULO;
+        }
+        presupuesto limites = presupuesto.actual();
+        if (limites != null) {
+            limites.cobrarCeldas(1);
+        }
+        return new secuencia(elemento, generador);
+    }
+
+    /**
+     * Crea una secuencia de números desde (inclusive) hasta (exclusive).
+     */
+    public static ExpresionLisp rango(long desde, long hasta, long paso) throws ExcepcionLisp {
+        if (paso == 0) {
+            throw new ExcepcionLisp("RANGO requiere un paso distinto de cero");
+        }
+        return desde(new Rango(desde, hasta, paso));
+    }
+
+    /**
+     * Crea una secuencia con las expresiones leídas del lector dado.
+     * El lector se cierra al llegar al final o al encontrar un error.
+     */
+    public static ExpresionLisp formas(Reader lector) throws ExcepcionLisp {
+        return desde(new Formas(lector));
+    }
+
+    /**
+     * Crea una secuencia que recorre la lista dada (perezosa o no)
+     * aplicando la transformación a cada elemento.
+     */
+    public static ExpresionLisp transformar(ExpresionLisp fuente, Transformacion transformacion)
+            throws ExcepcionLisp {
+        return desde(new Recorrido(fuente, transformacion));
+    }
+
+    @Override
+    public ExpresionLisp primero() {
+        return primero;
+    }
+
+    @Override
+    public synchronized ExpresionLisp resto() throws ExcepcionLisp {
+        if (generador != null) {
+            resto = desde(generador);
+            generador = null;
+        }
+        return resto;
+    }
+
+    @Override
+    public void imprimir(PrintStream salida) {
+        imprimirComoLista(salida);
+    }
+
+    /**
+     * Cuenta un paso por elemento generado contra el presupuesto activo en
+     * el hilo que recorre la secuencia, si lo hay.
+     */
+    private static void cobrarPaso() throws ExcepcionLisp {
+        presupuesto limites = presupuesto.actual();
+        if (limites != null) {
+            limites.cobrarPaso();
+        }
+    }
+
+    /**
+     * Genera números en progresión aritmética.
+     */
+    private static class Rango implements Generador {
+        private long actual;
+        private final long hasta;
+        private final long paso;
+        private boolean terminado;
+
+        Rango(long desde, long hasta, long paso) {
+            this.actual = desde;
+            this.hasta = hasta;
+            this.paso = paso;
+        }
+
+        @Override
+        public ExpresionLisp siguiente() throws ExcepcionLisp {
+            cobrarPaso();
+            if (terminado || (paso > 0 ? actual >= hasta : actual <= hasta)) {
+                return null;
+            }
+            // Fuera de la caché de números cada elemento es un objeto nuevo,
+            // así que las celdas ya recorridas no dejan sus valores vivos
+            numero resultado = numero.obtenerValor(actual);
+            long proximo = actual + paso;
+            // Si se desborda, ya pasó del límite
+            if ((proximo > actual) != (paso > 0)) {
+                terminado = true;
+            }
+            actual = proximo;
+            return resultado;
+        }
+    }
+
+    /**
+     * Genera las expresiones leídas por un analizador.
+     */
+    private static class Formas implements Generador {
+        private final Reader lector;
+        private final analizador analizador;
+
+        Formas(Reader lector) {
+            this.lector = lector;
+            this.analizador = new analizador(lector);
+        }
+
+        @Override
+        public ExpresionLisp siguiente() throws ExcepcionLisp {
+            try {
+                cobrarPaso();
+                ExpresionLisp forma = analizador.analizar();
+                if (forma == null) {
+                    cerrar();
+                }
+                return forma;
+            } catch (ExcepcionLisp e) {
+                cerrar();
+                throw e;
+            }
+        }
+
+        private void cerrar() throws ExcepcionLisp {
+            try {
+                lector.close();
+            } catch (IOException e) {
+                throw new ExcepcionLisp("Error de E/S: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Recorre una lista aplicando una transformación.
+     * Solo guarda la posición actual, para no retener la cabeza de la lista.
+     */
+    private static class Recorrido implements Generador {
+        private ExpresionLisp actual;
+        private final Transformacion transformacion;
+
+        Recorrido(ExpresionLisp fuente, Transformacion transformacion) {
+            this.actual = fuente;
+            this.transformacion = transformacion;
+        }
+
+        @Override
+        public ExpresionLisp siguiente() throws ExcepcionLisp {
+            while (actual != simbolo.NULO) {
+                cobrarPaso();
+                ExpresionLisp elemento = actual.primero();
+                actual = actual.resto();
+                ExpresionLisp resultado = transformacion.transformar(elemento);
+                if (resultado != null) {
+                    return resultado;
+                }
+            }
+            return null;
+        }
+    }
+}
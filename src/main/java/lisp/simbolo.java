@@ -1,14 +1,29 @@
 package lisp;
 
 import java.io.PrintStream;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.Map;
 
 /**
  * Representa un símbolo en LISP.
+ *
+ * La tabla de símbolos asocia cada nombre en mayúsculas con su símbolo. Sus
+ * claves son los nombres (String), y para buscar se usa una sonda por hilo
+ * que compara y calcula el hash plegando mayúsculas carácter a carácter, así
+ * que buscar un símbolo existente no crea ninguna cadena.
+ *
+ * Los valores de la tabla son el propio símbolo, que queda fijo para siempre,
+ * o, tras usarTablaDebil(), una referencia débil que permite recolectar los
+ * símbolos que ya nadie usa. Los creados antes de activarla siguen fijos, lo
+ * que incluye todas las constantes de esta clase.
  */
 public class simbolo extends atomo {
-    private static final Map<String, simbolo> tablaSimbolo = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<Object, Object> tablaSimbolo = new ConcurrentHashMap<>();
+    private static final ReferenceQueue<simbolo> recolectados = new ReferenceQueue<>();
+    private static final ThreadLocal<Sonda> sondas = ThreadLocal.withInitial(Sonda::new);
+    private static volatile boolean tablaDebil = false;
     
     // Símbolos estándar
     public static final simbolo NULO = internamente("NULO");
@@ -19,16 +34,58 @@ public class simbolo extends atomo {
     public static final simbolo ASIGNAR = internamente("ASIGNAR");
     public static final simbolo DEFINIR_FUNCION = internamente("DEFINIR_FUNCION");
     public static final simbolo CONDICIONAL = internamente("CONDICIONAL");
+    public static final simbolo PARALELO = internamente("PARALELO");
+    public static final simbolo FUTURO = internamente("FUTURO");
+    public static final simbolo FUTURO_BLOQUEANTE = internamente("FUTURO_BLOQUEANTE");
+    public static final simbolo REPETIR = internamente("REPETIR");
+    public static final simbolo MIENTRAS = internamente("MIENTRAS");
     
     // Funciones estándar
     public static final simbolo PRIMERO = internamente("PRIMERO");
     public static final simbolo RESTO = internamente("RESTO");
     public static final simbolo CONSTRUIR = internamente("CONSTRUIR");
     public static final simbolo LISTA = internamente("LISTA");
+    public static final simbolo LONGITUD = internamente("LONGITUD");
+    public static final simbolo ENESIMO = internamente("ENESIMO");
     public static final simbolo ES_ATOMO = internamente("ES_ATOMO");
     public static final simbolo ES_IGUAL_REF = internamente("ES_IGUAL_REF");
     public static final simbolo ES_IGUAL = internamente("ES_IGUAL");
     public static final simbolo IMPRIMIR = internamente("IMPRIMIR");
+    public static final simbolo ESPERAR = internamente("ESPERAR");
+    
+    // Funciones de orden superior
+    public static final simbolo MAPEAR = internamente("MAPEAR");
+    public static final simbolo FILTRAR = internamente("FILTRAR");
+    public static final simbolo REDUCIR = internamente("REDUCIR");
+    public static final simbolo PURA = internamente("PURA");
+    
+    // Secuencias perezosas
+    public static final simbolo RANGO = internamente("RANGO");
+    public static final simbolo LEER_FORMAS = internamente("LEER_FORMAS");
+    
+    // Vectores de enteros
+    public static final simbolo VECTOR = internamente("VECTOR");
+    public static final simbolo VECTOR_RANGO = internamente("VECTOR_RANGO");
+    public static final simbolo LISTA_A_VECTOR = internamente("LISTA_A_VECTOR");
+    public static final simbolo VECTOR_A_LISTA = internamente("VECTOR_A_LISTA");
+    public static final simbolo VECTOR_REF = internamente("VECTOR_REF");
+    public static final simbolo VECTOR_LONGITUD = internamente("VECTOR_LONGITUD");
+    public static final simbolo VECTOR_SUMAR = internamente("VECTOR_SUMAR");
+    public static final simbolo VECTOR_RESTAR = internamente("VECTOR_RESTAR");
+    public static final simbolo VECTOR_MULTIPLICAR = internamente("VECTOR_MULTIPLICAR");
+    public static final simbolo VECTOR_SUMA = internamente("VECTOR_SUMA");
+    public static final simbolo VECTOR_MINIMO = internamente("VECTOR_MINIMO");
+    public static final simbolo VECTOR_MAXIMO = internamente("VECTOR_MAXIMO");
+    public static final simbolo VECTOR_PRODUCTO = internamente("VECTOR_PRODUCTO");
+    
+    // Arenas fuera del montículo
+    public static final simbolo CREAR_ARENA = internamente("CREAR_ARENA");
+    public static final simbolo EN_ARENA = internamente("EN_ARENA");
+    public static final simbolo LIBERAR_ARENA = internamente("LIBERAR_ARENA");
+    
+    // Carga de archivos e imágenes del contexto global
+    public static final simbolo CARGAR = internamente("CARGAR");
+    public static final simbolo GUARDAR_IMAGEN = internamente("GUARDAR_IMAGEN");
     
     // Operadores aritméticos
     public static final simbolo SUMAR = internamente("+");
@@ -42,16 +99,146 @@ public class simbolo extends atomo {
     
     private final String nombre;
     
+    // Se activa aquí, después de crear las constantes, para que queden fijas
+    static {
+        if (Boolean.getBoolean("lisp.simbolosDebiles")) {
+            usarTablaDebil();
+        }
+    }
+    
     private simbolo(String nombre) {
-        this.nombre = nombre.toUpperCase();
+        this.nombre = nombre;
     }
     
     /**
      * Retorna un símbolo con el nombre dado. Si ya existe un símbolo con este nombre,
      * retorna el existente.
      */
-    public static simbolo internamente(String nombre) {
-        return tablaSimbolo.computeIfAbsent(nombre.toUpperCase(), simbolo::new);
+    public static simbolo internamente(CharSequence nombre) {
+        simbolo existente = buscar(nombre);
+        return existente != null ? existente : agregar(plegar(nombre));
+    }
+    
+    /**
+     * Busca el símbolo con el nombre dado sin crearlo.
+     * 
+     * @return El símbolo, o null si no existe
+     */
+    public static simbolo buscar(CharSequence nombre) {
+        Sonda sonda = sondas.get();
+        sonda.preparar(nombre);
+        try {
+            return valor(tablaSimbolo.get(sonda));
+        } finally {
+            sonda.preparar(null);
+        }
+    }
+    
+    /**
+     * Hace que los símbolos creados desde ahora se guarden con referencias
+     * débiles, para que los que ya no se usan se puedan recolectar. Los
+     * símbolos existentes quedan fijos. No se puede desactivar.
+     * También se activa con la propiedad del sistema lisp.simbolosDebiles.
+     */
+    public static void usarTablaDebil() {
+        tablaDebil = true;
+    }
+    
+    private static simbolo agregar(String nombre) {
+        purgar();
+        while (true) {
+            Object actual = tablaSimbolo.get(nombre);
+            simbolo existente = valor(actual);
+            if (existente != null) {
+                return existente;
+            }
+            simbolo nuevo = new simbolo(nombre);
+            Object entrada = tablaDebil ? new Referencia(nuevo) : nuevo;
+            boolean agregado = actual == null
+                ? tablaSimbolo.putIfAbsent(nombre, entrada) == null
+                : tablaSimbolo.replace(nombre, actual, entrada);
+            if (agregado) {
+                return nuevo;
+            }
+            // Otro hilo lo agregó o reemplazó antes; se vuelve a buscar
+        }
+    }
+    
+    /**
+     * Retira de la tabla las entradas de los símbolos ya recolectados.
+     */
+    private static void purgar() {
+        Reference<? extends simbolo> referencia;
+        while ((referencia = recolectados.poll()) != null) {
+            tablaSimbolo.remove(((Referencia) referencia).nombre, referencia);
+        }
+    }
+    
+    private static simbolo valor(Object entrada) {
+        return entrada instanceof Referencia ? ((Referencia) entrada).get() : (simbolo) entrada;
+    }
+    
+    private static String plegar(CharSequence nombre) {
+        char[] caracteres = new char[nombre.length()];
+        for (int i = 0; i < caracteres.length; i++) {
+            caracteres[i] = Character.toUpperCase(nombre.charAt(i));
+        }
+        return new String(caracteres);
+    }
+    
+    /**
+     * Entrada débil de la tabla; guarda el nombre para poder retirarla.
+     */
+    private static final class Referencia extends WeakReference<simbolo> {
+        final String nombre;
+        
+        Referencia(simbolo s) {
+            super(s, recolectados);
+            this.nombre = s.nombre;
+        }
+    }
+    
+    /**
+     * Clave de búsqueda reutilizable: es igual al nombre en mayúsculas de un
+     * símbolo si lo es el texto plegado, y tiene su mismo hash (el de String).
+     * ConcurrentHashMap compara siempre la clave buscada con las guardadas.
+     */
+    private static final class Sonda {
+        private CharSequence texto;
+        private int hash;
+        
+        void preparar(CharSequence texto) {
+            this.texto = texto;
+            int h = 0;
+            if (texto != null) {
+                for (int i = 0; i < texto.length(); i++) {
+                    h = 31 * h + Character.toUpperCase(texto.charAt(i));
+                }
+            }
+            this.hash = h;
+        }
+        
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof String)) {
+                return false;
+            }
+            String nombre = (String) obj;
+            if (nombre.length() != texto.length()) {
+                return false;
+            }
+            for (int i = 0; i < nombre.length(); i++) {
+                if (Character.toUpperCase(texto.charAt(i)) != nombre.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        
+        @Override
+        public int hashCode() {
+            return hash;
+        }
     }
     
     /**
@@ -0,0 +1,267 @@
+package lisp;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+
+/**
+ * Representa un vector de enteros largos en LISP.
+ * Los elementos se guardan sin envolver en un long[], y las operaciones masivas
+ * usan la API jdk.incubator.vector cuando el módulo está disponible.
+ */
+public class vector extends atomo {
+    // Se comprueba una sola vez; vectorSimd solo se carga si el módulo existe
+    private static final boolean SIMD = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+
+    /**
+     * Operaciones aritméticas elemento a elemento.
+     */
+    enum Operacion {
+        SUMA, RESTA, PRODUCTO;
+
+        long aplicar(long a, long b) {
+            switch (this) {
+                case SUMA: return a + b;
+                case RESTA: return a - b;
+                default: return a * b;
+            }
+        }
+    }
+
+    // Elementos entre verificaciones del presupuesto en los recorridos largos
+    private static final int BLOQUE_VERIFICACION = 1 << 16;
+
+    private final long[] datos;
+
+    public vector(long[] datos) {
+        this.datos = datos;
+    }
+
+    /**
+     * Crea un vector con los números desde (inclusive) hasta (exclusive).
+     */
+    public static vector rango(long desde, long hasta) throws ExcepcionLisp {
+        if (hasta <= desde) {
+            return new vector(new long[0]);
+        }
+        long cantidad;
+        try {
+            cantidad = Math.subtractExact(hasta, desde);
+        } catch (ArithmeticException e) {
+            throw new ExcepcionLisp("Vector demasiado grande: desde " + desde + " hasta " + hasta);
+        }
+        if (cantidad > Integer.MAX_VALUE - 8) {
+            throw new ExcepcionLisp("Vector demasiado grande: " + cantidad);
+        }
+        long[] datos = new long[(int) cantidad];
+        // Los pasos ya se cobraron; por bloques solo se verifican el plazo y la cancelación
+        presupuesto limites = presupuesto.actual();
+        for (int i = 0; i < datos.length; i++) {
+            if (limites != null && (i & (BLOQUE_VERIFICACION - 1)) == 0) {
+                limites.verificar();
+            }
+            datos[i] = desde + i;
+        }
+        return new vector(datos);
+    }
+
+    /**
+     * Crea un vector con los números de una lista (perezosa o no).
+     *
+     * @throws ExcepcionLisp si algún elemento no es un número
+     */
+    public static vector desdeLista(ExpresionLisp lista) throws ExcepcionLisp {
+        long[] datos = new long[16];
+        int cantidad = 0;
+        presupuesto limites = presupuesto.actual();
+        ExpresionLisp actual = lista;
+        while (!actual.esAtomo()) {
+            if (limites != null) {
+                limites.cobrarPaso();
+            }
+            ExpresionLisp elemento = actual.primero();
+            if (!elemento.esNumero()) {
+                throw new ExcepcionLisp("Un vector solo puede contener números: " + elemento);
+            }
+            if (cantidad == datos.length) {
+                datos = Arrays.copyOf(datos, cantidad * 2);
+            }
+            datos[cantidad++] = ((numero) elemento).obtenerValor();
+            actual = actual.resto();
+        }
+        if (actual != simbolo.NULO) {
+            throw new ExcepcionLisp("Se esperaba una lista: " + lista);
+        }
+        return new vector(Arrays.copyOf(datos, cantidad));
+    }
+
+    /**
+     * Convierte este vector en una lista LISP.
+     */
+    public ExpresionLisp aLista() throws ExcepcionLisp {
+        ExpresionLisp[] elementos = new ExpresionLisp[datos.length];
+        presupuesto limites = presupuesto.actual();
+        for (int i = 0; i < datos.length; i++) {
+            if (limites != null && (i & (BLOQUE_VERIFICACION - 1)) == 0) {
+                limites.verificar();
+            }
+            elementos[i] = numero.obtenerValor(datos[i]);
+        }
+        return listaCompacta.crear(elementos);
+    }
+
+    /**
+     * Obtiene la cantidad de elementos de este vector.
+     */
+    public int longitud() {
+        return datos.length;
+    }
+
+    /**
+     * Obtiene el elemento en la posición dada.
+     *
+     * @throws ExcepcionLisp si la posición está fuera de rango
+     */
+    public long obtener(long indice) throws ExcepcionLisp {
+        if (indice < 0 || indice >= datos.length) {
+            throw new ExcepcionLisp("Índice fuera de rango: " + indice);
+        }
+        return datos[(int) indice];
+    }
+
+    /**
+     * Obtiene el arreglo subyacente, sin copiarlo.
+     */
+    long[] datos() {
+        return datos;
+    }
+
+    /**
+     * Aplica la operación elemento a elemento con otro vector de igual longitud.
+     */
+    vector operar(Operacion operacion, vector otro) throws ExcepcionLisp {
+        if (otro.datos.length != datos.length) {
+            throw new ExcepcionLisp("Los vectores tienen longitudes distintas: "
+                + datos.length + " y " + otro.datos.length);
+        }
+        long[] resultado = new long[datos.length];
+        if (SIMD) {
+            vectorSimd.operar(operacion, datos, otro.datos, resultado);
+        } else {
+            for (int i = 0; i < datos.length; i++) {
+                resultado[i] = operacion.aplicar(datos[i], otro.datos[i]);
+            }
+        }
+        return new vector(resultado);
+    }
+
+    /**
+     * Aplica la operación entre cada elemento y un escalar.
+     */
+    vector operar(Operacion operacion, long escalar) {
+        long[] resultado = new long[datos.length];
+        if (SIMD) {
+            vectorSimd.operar(operacion, datos, escalar, resultado);
+        } else {
+            for (int i = 0; i < datos.length; i++) {
+                resultado[i] = operacion.aplicar(datos[i], escalar);
+            }
+        }
+        return new vector(resultado);
+    }
+
+    /**
+     * Suma todos los elementos.
+     */
+    public long suma() {
+        if (SIMD) {
+            return vectorSimd.suma(datos);
+        }
+        long resultado = 0;
+        for (long valor : datos) {
+            resultado += valor;
+        }
+        return resultado;
+    }
+
+    /**
+     * Obtiene el menor elemento.
+     *
+     * @throws ExcepcionLisp si el vector está vacío
+     */
+    public long minimo() throws ExcepcionLisp {
+        verificarNoVacio();
+        if (SIMD) {
+            return vectorSimd.minimo(datos);
+        }
+        long resultado = Long.MAX_VALUE;
+        for (long valor : datos) {
+            resultado = Math.min(resultado, valor);
+        }
+        return resultado;
+    }
+
+    /**
+     * Obtiene el mayor elemento.
+     *
+     * @throws ExcepcionLisp si el vector está vacío
+     */
+    public long maximo() throws ExcepcionLisp {
+        verificarNoVacio();
+        if (SIMD) {
+            return vectorSimd.maximo(datos);
+        }
+        long resultado = Long.MIN_VALUE;
+        for (long valor : datos) {
+            resultado = Math.max(resultado, valor);
+        }
+        return resultado;
+    }
+
+    /**
+     * Calcula el producto punto con otro vector de igual longitud.
+     */
+    public long productoPunto(vector otro) throws ExcepcionLisp {
+        if (otro.datos.length != datos.length) {
+            throw new ExcepcionLisp("Los vectores tienen longitudes distintas: "
+                + datos.length + " y " + otro.datos.length);
+        }
+        if (SIMD) {
+            return vectorSimd.productoPunto(datos, otro.datos);
+        }
+        long resultado = 0;
+        for (int i = 0; i < datos.length; i++) {
+            resultado += datos[i] * otro.datos[i];
+        }
+        return resultado;
+    }
+
+    private void verificarNoVacio() throws ExcepcionLisp {
+        if (datos.length == 0) {
+            throw new ExcepcionLisp("El vector está vacío");
+        }
+    }
+
+    @Override
+    public void imprimir(PrintStream salida) {
+        salida.print("#(");
+        for (int i = 0; i < datos.length; i++) {
+            if (i > 0) {
+                salida.print(" ");
+            }
+            salida.print(datos[i]);
+        }
+        salida.print(")");
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) return true;
+        if (!(obj instanceof vector)) return false;
+        return Arrays.equals(datos, ((vector) obj).datos);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(datos);
+    }
+}
@@ -0,0 +1,108 @@
+package lisp;
+
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Implementación de las operaciones de vector con la API jdk.incubator.vector.
+ * Solo se carga cuando el módulo está presente en tiempo de ejecución.
+ */
+final class vectorSimd {
+    private static final VectorSpecies<Long> ESPECIE = LongVector.SPECIES_PREFERRED;
+
+    private vectorSimd() {
+    }
+
+    private static VectorOperators.Binary operador(vector.Operacion operacion) {
+        switch (operacion) {
+            case SUMA: return VectorOperators.ADD;
+            case RESTA: return VectorOperators.SUB;
+            default: return VectorOperators.MUL;
+        }
+    }
+
+    static void operar(vector.Operacion operacion, long[] a, long[] b, long[] resultado) {
+        VectorOperators.Binary op = operador(operacion);
+        int i = 0;
+        int limite = ESPECIE.loopBound(a.length);
+        for (; i < limite; i += ESPECIE.length()) {
+            LongVector va = LongVector.fromArray(ESPECIE, a, i);
+            LongVector vb = LongVector.fromArray(ESPECIE, b, i);
+            va.lanewise(op, vb).intoArray(resultado, i);
+        }
+        for (; i < a.length; i++) {
+            resultado[i] = operacion.aplicar(a[i], b[i]);
+        }
+    }
+
+    static void operar(vector.Operacion operacion, long[] a, long escalar, long[] resultado) {
+        VectorOperators.Binary op = operador(operacion);
+        int i = 0;
+        int limite = ESPECIE.loopBound(a.length);
+        for (; i < limite; i += ESPECIE.length()) {
+            LongVector.fromArray(ESPECIE, a, i).lanewise(op, escalar).intoArray(resultado, i);
+        }
+        for (; i < a.length; i++) {
+            resultado[i] = operacion.aplicar(a[i], escalar);
+        }
+    }
+
+    static long suma(long[] datos) {
+        LongVector acumulado = LongVector.zero(ESPECIE);
+        int i = 0;
+        int limite = ESPECIE.loopBound(datos.length);
+        for (; i < limite; i += ESPECIE.length()) {
+            acumulado = acumulado.add(LongVector.fromArray(ESPECIE, datos, i));
+        }
+        long resultado = acumulado.reduceLanes(VectorOperators.ADD);
+        for (; i < datos.length; i++) {
+            resultado += datos[i];
+        }
+        return resultado;
+    }
+
+    static long minimo(long[] datos) {
+        LongVector acumulado = LongVector.broadcast(ESPECIE, Long.MAX_VALUE);
+        int i = 0;
+        int limite = ESPECIE.loopBound(datos.length);
+        for (; i < limite; i += ESPECIE.length()) {
+            acumulado = acumulado.min(LongVector.fromArray(ESPECIE, datos, i));
+        }
+        long resultado = acumulado.reduceLanes(VectorOperators.MIN);
+        for (; i < datos.length; i++) {
+            resultado = Math.min(resultado, datos[i]);
+        }
+        return resultado;
+    }
+
+    static long maximo(long[] datos) {
+        LongVector acumulado = LongVector.broadcast(ESPECIE, Long.MIN_VALUE);
+        int i = 0;
+        int limite = ESPECIE.loopBound(datos.length);
+        for (; i < limite; i += ESPECIE.length()) {
+            acumulado = acumulado.max(LongVector.fromArray(ESPECIE, datos, i));
+        }
+        long resultado = acumulado.reduceLanes(VectorOperators.MAX);
+        for (; i < datos.length; i++) {
+            resultado = Math.max(resultado, datos[i]);
+        }
+        return resultado;
+    }
+
+    static long productoPunto(long[] a, long[] b) {
+        LongVector acumulado = LongVector.zero(ESPECIE);
+        int i = 0;
+        int limite = ESPECIE.loopBound(a.length);
+        for (; i < limite; i += ESPECIE.length()) {
+            LongVector va = LongVector.fromArray(ESPECIE, a, i);
+            LongVector vb = LongVector.fromArray(ESPECIE, b, i);
+            acumulado = acumulado.add(va.mul(vb));
+        }
+        long resultado = acumulado.reduceLanes(VectorOperators.ADD);
+        for (; i < a.length; i++) {
+            resultado += a[i] * b[i];
+        }
+        return resultado;
+    }
+}